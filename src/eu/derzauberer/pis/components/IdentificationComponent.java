@@ -26,12 +26,12 @@ public class IdentificationComponent<T extends Entity<T> & NameEntity> extends C
 			getService().getAll().forEach(entity -> index.getEntries().put(identification.apply(entity), entity.getId()));
 			save(index);
 		}
-		getService().addOnAdd(entity -> {
-			index.getEntries().put(identification.apply(entity), entity.getId());
+		getService().addOnAddAll(entities -> {
+			entities.forEach(entity -> index.getEntries().put(identification.apply(entity), entity.getId()));
 			save(index);
 		});
-		getService().addOnRemove(id -> {
-			index.getEntries().remove(id);
+		getService().addOnRemoveAll(ids -> {
+			ids.forEach(index.getEntries()::remove);
 			save(index);
 		});
 	}
@@ -38,16 +38,24 @@ public class SearchComponent<T extends Entity<T> & NameEntity> extends Component
 			getService().getAll().forEach(this::add);
 			save(index);
 		}
-		getService().addOnAdd(entity -> {
-			final String originalName = index.getOriginalNames().get(entity.getId());
-			if (originalName != null && originalName.equals(entity.getName())) return;
-			removeById(entity.getId());
-			add(entity);
-			save(index);
+		getService().addOnAddAll(entities -> {
+			boolean changed = false;
+			for (T entity : entities) {
+				final String originalName = index.getOriginalNames().get(entity.getId());
+				if (originalName != null && originalName.equals(entity.getName())) continue;
+				removeById(entity.getId());
+				add(entity);
+				changed = true;
+			}
+			if (changed) save(index);
 		});
-		getService().addOnRemove(id -> {
-			removeById(id);
-			save(index);
+		getService().addOnRemoveAll(ids -> {
+			boolean changed = false;
+			for (String id : ids) {
+				changed |= index.getOriginalNames().containsKey(id);
+				removeById(id);
+			}
+			if (changed) save(index);
 		});
 	}
 	
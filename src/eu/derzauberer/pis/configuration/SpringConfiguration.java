@@ -3,15 +3,22 @@ package eu.derzauberer.pis.configuration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.BeansException;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.boot.web.servlet.server.CookieSameSiteSupplier;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 import org.springframework.context.support.ResourceBundleMessageSource;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -36,6 +43,8 @@ import eu.derzauberer.pis.configuration.SerializationConfiguration.DateTimeSeria
 import eu.derzauberer.pis.configuration.SerializationConfiguration.PrettyPrinter;
 import eu.derzauberer.pis.configuration.SerializationConfiguration.TimeDeserializer;
 import eu.derzauberer.pis.configuration.SerializationConfiguration.TimeSerializer;
+import eu.derzauberer.pis.enums.SyncPolicy;
+import eu.derzauberer.pis.model.Entity;
 import eu.derzauberer.pis.model.Line;
 import eu.derzauberer.pis.model.Operator;
 import eu.derzauberer.pis.model.Route;
@@ -43,17 +52,37 @@ import eu.derzauberer.pis.model.Station;
 import eu.derzauberer.pis.model.StationTraffic;
 import eu.derzauberer.pis.model.TransportationType;
 import eu.derzauberer.pis.model.User;
+import eu.derzauberer.pis.repositories.ArchivingEntityRepository;
+import eu.derzauberer.pis.repositories.CachingEntityRepository;
 import eu.derzauberer.pis.repositories.EntityRepository;
 import eu.derzauberer.pis.repositories.FileEntityRepository;
+import eu.derzauberer.pis.repositories.LogEntityRepository;
+import eu.derzauberer.pis.repositories.MappedStationTrafficRepository;
 import eu.derzauberer.pis.repositories.MemoryEntityRepository;
+import eu.derzauberer.pis.repositories.StorageCodec;
+import eu.derzauberer.pis.repositories.StorageLayout;
 
 @Configuration
 public class SpringConfiguration implements ApplicationContextAware, WebMvcConfigurer {
 	
 	public static boolean caching = true;
 	public static boolean indexing = true;
+	public static boolean logging = false;
+	public static boolean mapping = false;
+	public static long writeBehindStaleness = 0;
+	public static long checkpointInterval = 0;
+	public static SyncPolicy syncPolicy = SyncPolicy.NONE;
+	public static StorageLayout storageLayout = StorageLayout.FLAT;
+	public static StorageCodec storageCodec = StorageCodec.PRETTY;
+	public static Map<String, StorageCodec> storageCodecs = new HashMap<>();
+	public static int retentionDays = -1;
+	public static int lineCacheSize = 10000;
+	public static int stationTrafficCacheSize = 20000;
+	public static int boardCacheSize = 500000;
+	public static int indexingThreads = Runtime.getRuntime().availableProcessors();
 	
 	private static ApplicationContext applicationContext;
+	private static final List<ArchivingEntityRepository<?>> archivingRepositories = new ArrayList<>();
 	
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
@@ -64,6 +93,12 @@ public class SpringConfiguration implements ApplicationContextAware, WebMvcConfi
         return applicationContext.getBean(bean);
     }
 	
+	@EventListener(ApplicationReadyEvent.class)
+	public void startArchiving() {
+		// Archiving starts once every service listens for archived entities
+		archivingRepositories.forEach(ArchivingEntityRepository::startArchiving);
+	}
+	
 	@Bean
     public CookieSameSiteSupplier applicationCookieSameSiteSupplier() {
         return CookieSameSiteSupplier.ofStrict();
@@ -140,37 +175,59 @@ public class SpringConfiguration implements ApplicationContextAware, WebMvcConfi
 	
 	@Bean
 	public EntityRepository<Line> getLineRepository() {
-		return new FileEntityRepository<>("lines", Line.class);
+		final EntityRepository<Line> repository = createArchivingRepository(createRepository("lines", Line.class, false),
+				line -> line.getFirstStop() != null && line.getFirstStop().getDeparture() != null ? line.getFirstStop().getDeparture().toLocalDate() : null);
+		return createCachingRepository(repository, lineCacheSize);
 	}
 	
 	@Bean
 	public EntityRepository<Operator> getOperatorRepository() {
-		return caching ? new MemoryEntityRepository<>("operators", Operator.class) : new FileEntityRepository<>("operators", Operator.class);
+		return createRepository("operators", Operator.class, true);
 	}
 	
 	@Bean
 	public EntityRepository<Route> getRouteRepository() {
-		return caching ? new MemoryEntityRepository<>("routes", Route.class) : new FileEntityRepository<>("routes", Route.class);
+		return createRepository("routes", Route.class, true);
 	}
 	
 	@Bean
 	public EntityRepository<Station> getStationRepository() {
-		return caching ? new MemoryEntityRepository<>("stations", Station.class) : new FileEntityRepository<>("stations", Station.class);
+		return createRepository("stations", Station.class, true);
 	}
 	
 	@Bean
 	public EntityRepository<StationTraffic> getStationTrafficRepository() {
-		return new FileEntityRepository<>("station_traffic_indices", StationTraffic.class);
+		final EntityRepository<StationTraffic> repository = mapping 
+				? new MappedStationTrafficRepository("station_traffic_indices") 
+				: createRepository("station_traffic_indices", StationTraffic.class, false);
+		return createCachingRepository(createArchivingRepository(repository, StationTraffic::getDate), stationTrafficCacheSize);
 	}
 	
 	@Bean
 	public EntityRepository<TransportationType> getTypeRepository() {
-		return caching ? new MemoryEntityRepository<>("types", TransportationType.class) : new FileEntityRepository<>("types", TransportationType.class);
+		return createRepository("types", TransportationType.class, true);
 	}
 	
 	@Bean
 	public EntityRepository<User> getUserRepository() {
-		return caching ? new MemoryEntityRepository<>("users", User.class) : new FileEntityRepository<>("users", User.class);
+		return createRepository("users", User.class, true);
+	}
+	
+	private static <T extends Entity<T>> EntityRepository<T> createRepository(String name, Class<T> type, boolean cacheable) {
+		if (caching && cacheable) return new MemoryEntityRepository<>(name, type, writeBehindStaleness, checkpointInterval);
+		if (logging) return new LogEntityRepository<>(name, type);
+		return new FileEntityRepository<>(name, type);
+	}
+	
+	private static <T extends Entity<T>> EntityRepository<T> createArchivingRepository(EntityRepository<T> repository, Function<T, LocalDate> dateFunction) {
+		if (retentionDays < 0) return repository;
+		final ArchivingEntityRepository<T> archivingRepository = new ArchivingEntityRepository<>(repository, dateFunction, retentionDays);
+		archivingRepositories.add(archivingRepository);
+		return archivingRepository;
+	}
+	
+	private static <T extends Entity<T>> EntityRepository<T> createCachingRepository(EntityRepository<T> repository, int cacheSize) {
+		return cacheSize > 0 ? new CachingEntityRepository<>(repository, cacheSize) : repository;
 	}
 	
 }
@@ -5,6 +5,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -18,6 +19,7 @@ import eu.derzauberer.pis.configuration.UserConfiguration;
 import eu.derzauberer.pis.downloader.DbRisPlatformsDownloader;
 import eu.derzauberer.pis.downloader.DbRisStationsDownloader;
 import eu.derzauberer.pis.downloader.DbStadaStationDownloader;
+import eu.derzauberer.pis.repositories.StorageLayout;
 import eu.derzauberer.pis.service.EntityService;
 import eu.derzauberer.pis.service.LineService;
 import eu.derzauberer.pis.service.OperatorService;
@@ -74,4 +76,48 @@ public class CommandController {
 		downloader.run();
 	}
 	
+	@GetMapping("/migrate")
+	public String migrateLayout(
+			@RequestParam(name = "layout", required = true) String layoutName,
+			@RequestParam(name = "service", required = false) String serviceName
+			) {
+		final StorageLayout layout;
+		try {
+			layout = StorageLayout.of(layoutName);
+		} catch (IllegalArgumentException exception) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, exception.getMessage());
+		}
+		if (serviceName != null && !services.containsKey(serviceName)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The service " + serviceName + " does not exist!");
+		}
+		services.forEach((name, service) -> {
+			if (serviceName != null && !serviceName.equals(name)) return;
+			final Thread thread = new Thread(() -> service.migrateLayout(layout), "migrate-" + name);
+			thread.setDaemon(true);
+			thread.start();
+		});
+		return "Started migration to the " + layout.getName() + " layout!";
+	}
+	
+	@GetMapping("/recode")
+	public String recodeEntities(@RequestParam(name = "service", required = false) String serviceName) {
+		if (serviceName != null && !services.containsKey(serviceName)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The service " + serviceName + " does not exist!");
+		}
+		services.forEach((name, service) -> {
+			if (serviceName != null && !serviceName.equals(name)) return;
+			final Thread thread = new Thread(service::recodeEntities, "recode-" + name);
+			thread.setDaemon(true);
+			thread.start();
+		});
+		return "Started recoding!";
+	}
+	
+	@GetMapping("/statistics")
+	public Map<String, Map<String, Object>> getStatistics() {
+		final Map<String, Map<String, Object>> statistics = new TreeMap<>();
+		services.forEach((name, service) -> statistics.put(name, service.getStatistics()));
+		return statistics;
+	}
+	
 }
@@ -1,7 +1,9 @@
 package eu.derzauberer.pis.controller.api;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 
 import org.modelmapper.ModelMapper;
@@ -19,14 +21,18 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import eu.derzauberer.pis.dto.ImportResultDto;
 import eu.derzauberer.pis.dto.ListDto;
+import eu.derzauberer.pis.dto.TrafficEntryDto;
 import eu.derzauberer.pis.model.Line;
+import eu.derzauberer.pis.model.RealtimeUpdate;
 import eu.derzauberer.pis.model.Station;
 import eu.derzauberer.pis.model.StationTrafficEntry;
 import eu.derzauberer.pis.service.LineService;
 import eu.derzauberer.pis.service.StationService;
-import eu.derzauberer.pis.util.CollectableList;
+import eu.derzauberer.pis.util.TrafficCursor;
 import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
@@ -64,13 +70,80 @@ public class LineController {
 		return getTraffic(true, stationId, date, hour, offset, limit);
 	}
 	
+	@GetMapping("/arrivals/{stationId}")
+	public ListDto<TrafficEntryDto> getArrivalWindow(
+			@PathVariable("stationId") String stationId,
+			@RequestParam(name = "from", required = false) String from,
+			@RequestParam(name = "after", required = false) String after,
+			@RequestParam(name = "minutes", required = false, defaultValue = "-1") int minutes,
+			@RequestParam(name = "limit", required = false, defaultValue = "10") int limit
+			) {
+		return getTrafficWindow(false, stationId, from, after, minutes, limit);
+	}
+	
+	@GetMapping("/departures/{stationId}")
+	public ListDto<TrafficEntryDto> getDepartureWindow(
+			@PathVariable("stationId") String stationId,
+			@RequestParam(name = "from", required = false) String from,
+			@RequestParam(name = "after", required = false) String after,
+			@RequestParam(name = "minutes", required = false, defaultValue = "-1") int minutes,
+			@RequestParam(name = "limit", required = false, defaultValue = "10") int limit
+			) {
+		return getTrafficWindow(true, stationId, from, after, minutes, limit);
+	}
+	
 	private ListDto<StationTrafficEntry> getTraffic(boolean arrival, String stationId, String date, int hour, int offset, int limit) {
 		final Station station = stationService.getById(stationId).orElseThrow(() -> getNotFoundException("Station", stationId));
 		if (!date.matches("^\\d{8}$")) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Date format " + date + " is invalid, it has to be YYYYMMDD");
 		final LocalDateTime dateTime = LocalDateTime.of(Integer.parseInt(date.substring(0, 4)), Integer.parseInt(date.substring(4, 6)), Integer.parseInt(date.substring(6, 8)), hour, 0);
-		final List<StationTrafficEntry> entries = (!arrival ? lineService.findArrivalsSinceHour(station, dateTime, limit) : lineService.findDeparturesSinceHour(station, dateTime, limit)).stream().toList();
-		//final int total = !arrival ? lineService.getAmountOfArrivalsSinceHour(station, dateTime, limit) : lineService.getAmountOfDeparturesSinceHour(station, dateTime, limit);
-		return new CollectableList<StationTrafficEntry>(entries).getList(offset, limit == -1 ? entries.size() : limit);
+		final int total = !arrival ? lineService.getAmountOfArrivalsSinceHour(station, dateTime) : lineService.getAmountOfDeparturesSinceHour(station, dateTime);
+		if (offset < 0 || (offset != 0 && offset >= total)) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The offset is larger than the total amount of results!");
+		if (limit == 0 || limit < -1) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit has to be larger than zero!");
+		final List<StationTrafficEntry> entries = !arrival ? lineService.findArrivalsSinceHour(station, dateTime, offset, limit) : lineService.findDeparturesSinceHour(station, dateTime, offset, limit);
+		final ListDto<StationTrafficEntry> listDto = new ListDto<>();
+		listDto.setOffset(offset);
+		listDto.setLimit(entries.size());
+		listDto.setTotal(total);
+		listDto.setResults(entries);
+		return listDto;
+	}
+	
+	private ListDto<TrafficEntryDto> getTrafficWindow(boolean departure, String stationId, String from, String after, int minutes, int limit) {
+		final Station station = stationService.getById(stationId).orElseThrow(() -> getNotFoundException("Station", stationId));
+		if (from != null && !from.matches("^\\d{12}$")) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Date format " + from + " is invalid, it has to be YYYYMMDDHHMM");
+		if (limit == 0 || limit < -1) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit has to be larger than zero!");
+		final Duration duration = minutes >= 0 ? Duration.ofMinutes(minutes) : null;
+		final List<TrafficEntryDto> entries;
+		final int total;
+		if (after != null) {
+			final TrafficCursor cursor;
+			try {
+				cursor = TrafficCursor.decode(after);
+			} catch (IllegalArgumentException exception) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, exception.getMessage());
+			}
+			entries = departure ? lineService.findDeparturesAfter(station, cursor, duration, limit) : lineService.findArrivalsAfter(station, cursor, duration, limit);
+			total = departure ? lineService.countDeparturesAfter(station, cursor, duration, entries) : lineService.countArrivalsAfter(station, cursor, duration, entries);
+		} else {
+			final LocalDateTime dateTime = from != null 
+					? LocalDateTime.of(Integer.parseInt(from.substring(0, 4)), Integer.parseInt(from.substring(4, 6)), Integer.parseInt(from.substring(6, 8)), Integer.parseInt(from.substring(8, 10)), Integer.parseInt(from.substring(10, 12)))
+					: LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+			entries = departure ? lineService.findDeparturesInWindow(station, dateTime, duration, limit) : lineService.findArrivalsInWindow(station, dateTime, duration, limit);
+			total = departure ? lineService.countDeparturesInWindow(station, dateTime, duration, entries) : lineService.countArrivalsInWindow(station, dateTime, duration, entries);
+		}
+		final ListDto<TrafficEntryDto> listDto = new ListDto<>();
+		listDto.setLimit(entries.size());
+		listDto.setTotal(total);
+		listDto.setAfter(after);
+		// Without new entries the client keeps polling from the same position
+		if (!entries.isEmpty()) {
+			final TrafficEntryDto last = entries.get(entries.size() - 1);
+			listDto.setNext(new TrafficCursor(last.getDateTime(), last.getLineId(), last.getStationPosition()).encode());
+		} else {
+			listDto.setNext(after);
+		}
+		listDto.setResults(entries);
+		return listDto;
 	}
 	
 	@GetMapping("{id}")
@@ -84,9 +157,18 @@ public class LineController {
 		return line;
 	}
 	
+	@PostMapping("/realtime")
+	public List<RealtimeUpdate> updateRealtime(@RequestBody List<RealtimeUpdate> updates) {
+		try {
+			return lineService.updateRealtime(updates);
+		} catch (IllegalArgumentException exception) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, exception.getMessage());
+		}
+	}
+	
 	@PutMapping
 	public Line updateLine(@RequestBody Line line) {
-		final Line existingLine = lineService.getById(line.getId()).orElseThrow(() -> getNotFoundException("Line", line.getId()));
+		final Line existingLine = lineService.getCopyById(line.getId()).orElseThrow(() -> getNotFoundException("Line", line.getId()));
 		modelMapper.map(line, existingLine);
 		lineService.add(existingLine);
 		return existingLine;
@@ -98,21 +180,24 @@ public class LineController {
 	}
 	
 	@PostMapping("/import")
-	public String importStations(@RequestBody String content) {
-		lineService.importEntities(content);
-		return "Successful imported!";
+	public ImportResultDto importStations(HttpServletRequest request) throws IOException {
+		return lineService.importEntities(request.getInputStream());
 	}
 	
 	@GetMapping("/export")
-	public Object importStations(@RequestParam(name = "download", defaultValue = "false") boolean donwload, Model model, HttpServletResponse response) throws IOException {
+	public Object importStations(
+			@RequestParam(name = "download", defaultValue = "false") boolean donwload,
+			@RequestParam(name = "compact", defaultValue = "false") boolean compact,
+			@RequestParam(name = "gzip", defaultValue = "false") boolean gzip,
+			Model model, HttpServletResponse response
+			) throws IOException {
 		if (donwload) {
-			final String content = lineService.exportEntities();
 			response.setContentType("application/octet-stream");
 			final String headerKey = "Content-Disposition";
-			final String headerValue = "attachment; filename = " + lineService.getName() + ".json";
+			final String headerValue = "attachment; filename = " + lineService.getName() + (gzip ? ".json.gz" : ".json");
 			response.setHeader(headerKey, headerValue);
 			final ServletOutputStream outputStream = response.getOutputStream();
-			outputStream.write(content.getBytes("UTF-8"));
+			lineService.exportEntities(outputStream, compact, gzip);
 			outputStream.close();
 			return null;
 		} else {
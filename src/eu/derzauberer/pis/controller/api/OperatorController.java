@@ -17,11 +17,13 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import eu.derzauberer.pis.dto.ImportResultDto;
 import eu.derzauberer.pis.dto.ListDto;
 import eu.derzauberer.pis.model.Operator;
 import eu.derzauberer.pis.service.OperatorService;
 import eu.derzauberer.pis.util.Collectable;
 import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
@@ -38,10 +40,12 @@ public class OperatorController {
 	public ListDto<Operator> getOperators(
 			@RequestParam(name = "search", required = false) String search,
 			@RequestParam(name = "offset", required = false, defaultValue = "0") int offset,
-			@RequestParam(name = "limit", required = false, defaultValue = "-1") int limit
+			@RequestParam(name = "limit", required = false, defaultValue = "-1") int limit,
+			@RequestParam(name = "after", required = false) String after
 			) {
 		final boolean hasSearch = search != null && !search.isBlank();
 		final Collectable<Operator> collectable = hasSearch ? operatorService.search(search) : operatorService;
+		if (after != null) return collectable.getList(after, limit == -1 ? collectable.size() : limit);
 		return collectable.getList(offset, limit == -1 ? collectable.size() : limit);
 	}
 	
@@ -58,7 +62,7 @@ public class OperatorController {
 	
 	@PutMapping
 	public Operator updateOperator(@RequestBody Operator operator) {
-		final Operator existingOperator = operatorService.getById(operator.getId()).orElseThrow(() -> getNotFoundException(operator.getId()));
+		final Operator existingOperator = operatorService.getCopyById(operator.getId()).orElseThrow(() -> getNotFoundException(operator.getId()));
 		modelMapper.map(operator, existingOperator);
 		operatorService.add(existingOperator);
 		return existingOperator;
@@ -70,21 +74,24 @@ public class OperatorController {
 	}
 	
 	@PostMapping("/import")
-	public String importStations(@RequestBody String content) {
-		operatorService.importEntities(content);
-		return "Successful imported!";
+	public ImportResultDto importStations(HttpServletRequest request) throws IOException {
+		return operatorService.importEntities(request.getInputStream());
 	}
 	
 	@GetMapping("/export")
-	public Object importStations(@RequestParam(name = "download", defaultValue = "false") boolean donwload, Model model, HttpServletResponse response) throws IOException {
+	public Object importStations(
+			@RequestParam(name = "download", defaultValue = "false") boolean donwload,
+			@RequestParam(name = "compact", defaultValue = "false") boolean compact,
+			@RequestParam(name = "gzip", defaultValue = "false") boolean gzip,
+			Model model, HttpServletResponse response
+			) throws IOException {
 		if (donwload) {
-			final String content = operatorService.exportEntities();
 			response.setContentType("application/octet-stream");
 			final String headerKey = "Content-Disposition";
-			final String headerValue = "attachment; filename = " + operatorService.getName() + ".json";
+			final String headerValue = "attachment; filename = " + operatorService.getName() + (gzip ? ".json.gz" : ".json");
 			response.setHeader(headerKey, headerValue);
 			final ServletOutputStream outputStream = response.getOutputStream();
-			outputStream.write(content.getBytes("UTF-8"));
+			operatorService.exportEntities(outputStream, compact, gzip);
 			outputStream.close();
 			return null;
 		} else {
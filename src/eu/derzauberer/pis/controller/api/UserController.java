@@ -17,6 +17,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import eu.derzauberer.pis.dto.ImportResultDto;
 import eu.derzauberer.pis.dto.ListDto;
 import eu.derzauberer.pis.dto.UserDto;
 import eu.derzauberer.pis.dto.UserEditDto;
@@ -25,6 +26,7 @@ import eu.derzauberer.pis.model.User;
 import eu.derzauberer.pis.service.UserService;
 import eu.derzauberer.pis.util.Collectable;
 import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
@@ -41,11 +43,14 @@ public class UserController {
 	public ListDto<UserInfoDto> getUsers(
 			@RequestParam(name = "search", required = false) String search,
 			@RequestParam(name = "offset", required = false, defaultValue = "0") int offset,
-			@RequestParam(name = "limit", required = false, defaultValue = "-1") int limit
+			@RequestParam(name = "limit", required = false, defaultValue = "-1") int limit,
+			@RequestParam(name = "after", required = false) String after
 			) {
 		final boolean hasSearch = search != null && !search.isBlank();
 		final Collectable<User> collectable = hasSearch ? userService.search(search) : userService;
-		return collectable.map((user) -> modelMapper.map(user, UserInfoDto.class)).getList(offset, limit == -1 ? collectable.size() : limit);
+		final Collectable<UserInfoDto> mappedCollectable = collectable.map((user) -> modelMapper.map(user, UserInfoDto.class));
+		if (after != null) return mappedCollectable.getList(after, limit == -1 ? collectable.size() : limit);
+		return mappedCollectable.getList(offset, limit == -1 ? collectable.size() : limit);
 	}
 	
 	@GetMapping("{id}")
@@ -65,7 +70,7 @@ public class UserController {
 	
 	@PutMapping
 	public UserDto updateUser(@RequestBody UserEditDto user) {
-		final User existingUser = userService.getById(user.getId()).orElseThrow(() -> getNotFoundException(user.getId()));
+		final User existingUser = userService.getCopyById(user.getId()).orElseThrow(() -> getNotFoundException(user.getId()));
 		modelMapper.map(user, existingUser);
 		userService.add(existingUser);
 		return modelMapper.map(existingUser, UserDto.class);
@@ -77,21 +82,24 @@ public class UserController {
 	}
 	
 	@PostMapping("/import")
-	public String importStations(@RequestBody String content) {
-		userService.importEntities(content);
-		return "Successful imported!";
+	public ImportResultDto importStations(HttpServletRequest request) throws IOException {
+		return userService.importEntities(request.getInputStream());
 	}
 	
 	@GetMapping("/export")
-	public Object importStations(@RequestParam(name = "download", defaultValue = "false") boolean donwload, Model model, HttpServletResponse response) throws IOException {
+	public Object importStations(
+			@RequestParam(name = "download", defaultValue = "false") boolean donwload,
+			@RequestParam(name = "compact", defaultValue = "false") boolean compact,
+			@RequestParam(name = "gzip", defaultValue = "false") boolean gzip,
+			Model model, HttpServletResponse response
+			) throws IOException {
 		if (donwload) {
-			final String content = userService.exportEntities();
 			response.setContentType("application/octet-stream");
 			final String headerKey = "Content-Disposition";
-			final String headerValue = "attachment; filename = " + userService.getName() + ".json";
+			final String headerValue = "attachment; filename = " + userService.getName() + (gzip ? ".json.gz" : ".json");
 			response.setHeader(headerKey, headerValue);
 			final ServletOutputStream outputStream = response.getOutputStream();
-			outputStream.write(content.getBytes("UTF-8"));
+			userService.exportEntities(outputStream, compact, gzip);
 			outputStream.close();
 			return null;
 		} else {
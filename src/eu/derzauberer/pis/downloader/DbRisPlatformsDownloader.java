@@ -1,5 +1,6 @@
 package eu.derzauberer.pis.downloader;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.TreeSet;
 
@@ -24,6 +25,7 @@ public class DbRisPlatformsDownloader {
 	
 	private static final String NAME = "db/ris::platforms";
 	private static final String URL = "https://apis.deutschebahn.com/db-api-marketplace/apis/ris-stations/v1/platforms/by-key";
+	private static final int SAVE_BATCH_SIZE = 100;
 	private static final Logger LOGGER = LoggerFactory.getLogger(DbRisPlatformsDownloader.class);
 	
 	@Autowired
@@ -40,12 +42,12 @@ public class DbRisPlatformsDownloader {
 		request.getHeader().put("DB-Client-Id", config.getDbClientId());
 		request.getHeader().put("DB-Api-Key", config.getDbApiKey());
 		request.setExceptionAction(exception -> LOGGER.error("Downloading {} from {} failed: {} {}", stationService.getName(), NAME, exception.getClass().getSimpleName(), exception.getMessage()));
-		final List<Station> stations = stationService.getAll();
+		final List<Station> stations = stationService.getStationsWithEva();
+		final List<Station> changedStations = new ArrayList<>();
 		int counter = 0;
 		long millis = System.currentTimeMillis();
 		final ProgressStatus progress = new ProgressStatus("Processing", NAME, stations.size());
 		for (Station station : stations) {
-			if (station.getApiInformation() == null || station.getApiInformation().getIds() == null || !station.getApiInformation().getIds().containsKey("eva")) continue;
 			request.getParameter().put("keyType", "EVA");
 			request.getParameter().put("key", station.getApiInformation().getIds().get("eva").toString());
 			long wait = System.currentTimeMillis() - millis;
@@ -53,14 +55,20 @@ public class DbRisPlatformsDownloader {
 				Thread.sleep(wait < 120 ? 120 - wait : 120);
 			} catch (InterruptedException exception) {}
 			millis = System.currentTimeMillis();
-			request.request().map(HttpRequest::mapToJson).ifPresent(json -> save(station, json));
+			request.request().map(HttpRequest::mapToJson).map(json -> update(station, json)).ifPresent(changedStations::add);
+			if (changedStations.size() >= SAVE_BATCH_SIZE) {
+				stationService.addAll(changedStations);
+				changedStations.clear();
+			}
 			progress.count(station.getId());
 			counter++;
 		}
+		stationService.addAll(changedStations);
 		LOGGER.info("Downloaded {} stations platforms from {}", counter, NAME, URL);
 	}
 	
-	private void save(Station station, ObjectNode json) {
+	private Station update(Station originalStation, ObjectNode json) {
+		final Station station = stationService.getCopyById(originalStation.getId()).orElse(originalStation);
 		if (station.getPlatforms() == null && !json.withArray("platforms").isEmpty()) station.setPlatforms(new TreeSet<>());
 		for (JsonNode node : json.withArray("platforms")) {
 			final Platform platfrom = new Platform(node.get("name").asText().toUpperCase());
@@ -75,7 +83,7 @@ public class DbRisPlatformsDownloader {
 			}
 			station.getOrCreateApiInformation().addSource(URL);
 		}
-		stationService.add(station);
+		return station;
 	}
 	
 	public static String getName() {
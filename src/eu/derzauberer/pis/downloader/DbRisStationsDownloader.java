@@ -1,5 +1,8 @@
 package eu.derzauberer.pis.downloader;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,10 +47,11 @@ public class DbRisStationsDownloader {
 	
 	private void saveAll(ObjectNode json) {
 		final ProgressStatus progress = new ProgressStatus("Processing", NAME, json.withArray("stations").size());
+		final Map<String, Station> stations = new LinkedHashMap<>();
 		int counter = 0;
 		for (JsonNode node : json.withArray("stations")) {
 			final String name = node.at("/names/DE/name").asText();
-			final Station station = stationService.getById(NameEntity.nameToId(name)).orElse(new Station(name));
+			final Station station = stations.containsKey(NameEntity.nameToId(name)) ? stations.get(NameEntity.nameToId(name)) : stationService.getCopyById(NameEntity.nameToId(name)).orElse(new Station(name));
 			if (node.at("/owner/name").asText().equalsIgnoreCase("DB S&S")) {
 				station.getOrCreateAdress().setName("DB Station&Service AG");
 			} else {
@@ -68,8 +72,9 @@ public class DbRisStationsDownloader {
 			station.getOrCreateApiInformation().addSource(URL);
 			progress.count();
 			counter++;
-			stationService.add(station);
+			stations.put(station.getId(), station);
 		}
+		stationService.addAll(stations.values());
 		LOGGER.info("Downloaded {} stations from {}", counter, NAME, URL);
 	}
 	
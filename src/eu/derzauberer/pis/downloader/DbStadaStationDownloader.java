@@ -1,7 +1,9 @@
 package eu.derzauberer.pis.downloader;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.slf4j.Logger;
@@ -48,10 +50,11 @@ public class DbStadaStationDownloader {
 	private void saveAll(ObjectNode json) {
 		final List<String> warns = new ArrayList<>();
 		final ProgressStatus progress = new ProgressStatus("Processing", NAME, json.withArray("result").size());
+		final Map<String, Station> stations = new LinkedHashMap<>();
 		int counter = 0;
 		for (JsonNode node : json.withArray("result")) {
 			final String name = node.get("name").asText();
-			final Station station = stationService.getById(NameEntity.nameToId(name)).orElse(new Station(name));
+			final Station station = stations.containsKey(NameEntity.nameToId(name)) ? stations.get(NameEntity.nameToId(name)) : stationService.getCopyById(NameEntity.nameToId(name)).orElse(new Station(name));
 			station.getOrCreateAdress().setStreet(node.at("/mailingAddress/street").asText());
 			station.getOrCreateAdress().setPostalCode(node.at("/mailingAddress/zipcode").asInt());
 			station.getOrCreateAdress().setCity(node.at("/mailingAddress/city").asText());
@@ -84,8 +87,9 @@ public class DbStadaStationDownloader {
 			station.getOrCreateApiInformation().addSource(URL);
 			progress.count();
 			counter++;
-			stationService.add(station);
+			stations.put(station.getId(), station);
 		}
+		stationService.addAll(stations.values());
 		for (String warn : warns) {
 			LOGGER.warn(warn);
 		}
@@ -0,0 +1,36 @@
+package eu.derzauberer.pis.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ImportResultDto {
+	
+	private int imported;
+	private int failed;
+	private List<String> errors = new ArrayList<>();
+	
+	public int getImported() {
+		return imported;
+	}
+	
+	public void setImported(int imported) {
+		this.imported = imported;
+	}
+	
+	public int getFailed() {
+		return failed;
+	}
+	
+	public void setFailed(int failed) {
+		this.failed = failed;
+	}
+	
+	public List<String> getErrors() {
+		return errors;
+	}
+	
+	public void setErrors(List<String> errors) {
+		this.errors = errors;
+	}
+
+}
@@ -7,6 +7,8 @@ public class ListDto<T> {
 	private int offset;
     private int limit;
     private int total;
+    private String after;
+    private String next;
     private List<T> results;
 	
 	public int getOffset() {
@@ -33,6 +35,22 @@ public class ListDto<T> {
 		this.total = total;
 	}
 	
+	public String getAfter() {
+		return after;
+	}
+	
+	public void setAfter(String after) {
+		this.after = after;
+	}
+	
+	public String getNext() {
+		return next;
+	}
+	
+	public void setNext(String next) {
+		this.next = next;
+	}
+	
 	public List<T> getResults() {
 		return results;
 	}
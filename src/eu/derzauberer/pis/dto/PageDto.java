@@ -7,6 +7,8 @@ public class PageDto<T> {
 	private int page;
     private int pageSize;
     private int pageAmount;
+    private String after;
+    private String next;
     private List<T> results;
 	
 	public int getPage() {
@@ -33,6 +35,22 @@ public class PageDto<T> {
 		this.pageAmount = pageAmount;
 	}
 	
+	public String getAfter() {
+		return after;
+	}
+	
+	public void setAfter(String after) {
+		this.after = after;
+	}
+	
+	public String getNext() {
+		return next;
+	}
+	
+	public void setNext(String next) {
+		this.next = next;
+	}
+	
 	public List<T> getResults() {
 		return results;
 	}
@@ -0,0 +1,89 @@
+package eu.derzauberer.pis.dto;
+
+import java.time.LocalDateTime;
+
+public class TrafficEntryDto {
+	
+	private LocalDateTime dateTime;
+	private String lineId;
+	private int stationPosition;
+	private int platform;
+	private boolean lastStation;
+	private Integer delay;
+	private Integer changedPlatform;
+	private String changedPlatfromArea;
+	private Boolean cancelled;
+	
+	public LocalDateTime getDateTime() {
+		return dateTime;
+	}
+	
+	public void setDateTime(LocalDateTime dateTime) {
+		this.dateTime = dateTime;
+	}
+	
+	public String getLineId() {
+		return lineId;
+	}
+	
+	public void setLineId(String lineId) {
+		this.lineId = lineId;
+	}
+	
+	public int getStationPosition() {
+		return stationPosition;
+	}
+	
+	public void setStationPosition(int stationPosition) {
+		this.stationPosition = stationPosition;
+	}
+	
+	public int getPlatform() {
+		return platform;
+	}
+	
+	public void setPlatform(int platform) {
+		this.platform = platform;
+	}
+	
+	public boolean isLastStation() {
+		return lastStation;
+	}
+	
+	public void setLastStation(boolean lastStation) {
+		this.lastStation = lastStation;
+	}
+	
+	public Integer getDelay() {
+		return delay;
+	}
+	
+	public void setDelay(Integer delay) {
+		this.delay = delay;
+	}
+	
+	public Integer getChangedPlatform() {
+		return changedPlatform;
+	}
+	
+	public void setChangedPlatform(Integer changedPlatform) {
+		this.changedPlatform = changedPlatform;
+	}
+	
+	public String getChangedPlatfromArea() {
+		return changedPlatfromArea;
+	}
+	
+	public void setChangedPlatfromArea(String changedPlatfromArea) {
+		this.changedPlatfromArea = changedPlatfromArea;
+	}
+	
+	public Boolean getCancelled() {
+		return cancelled;
+	}
+	
+	public void setCancelled(Boolean cancelled) {
+		this.cancelled = cancelled;
+	}
+	
+}
@@ -0,0 +1,9 @@
+package eu.derzauberer.pis.enums;
+
+public enum SyncPolicy {
+	
+	NONE,
+	BATCHED,
+	PER_WRITE;
+
+}
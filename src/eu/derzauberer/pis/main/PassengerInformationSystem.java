@@ -11,6 +11,9 @@ import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfi
 import org.springframework.context.annotation.ComponentScan;
 
 import eu.derzauberer.pis.configuration.SpringConfiguration;
+import eu.derzauberer.pis.enums.SyncPolicy;
+import eu.derzauberer.pis.repositories.StorageCodec;
+import eu.derzauberer.pis.repositories.StorageLayout;
 
 @SpringBootApplication(exclude = { SecurityAutoConfiguration.class })
 @ComponentScan(basePackages = {"eu.derzauberer.pis"})
@@ -22,6 +25,47 @@ public class PassengerInformationSystem {
 		final List<String> arguments = Arrays.stream(args).map(arg -> arg.toLowerCase()).toList();
 		if (arguments.contains("--no-caching")) SpringConfiguration.caching = false;
 		if (arguments.contains("--no-indexing")) SpringConfiguration.indexing = false;
+		if (arguments.contains("--log-storage")) SpringConfiguration.logging = true;
+		if (arguments.contains("--mapped-traffic")) SpringConfiguration.mapping = true;
+		arguments.stream().filter(arg -> arg.startsWith("--write-behind")).findAny().ifPresent(arg -> {
+			SpringConfiguration.writeBehindStaleness = arg.contains("=") ? Long.parseLong(arg.substring(arg.indexOf('=') + 1)) : 1000;
+		});
+		if (arguments.contains("--no-checkpoint")) SpringConfiguration.checkpointInterval = -1;
+		arguments.stream().filter(arg -> arg.startsWith("--checkpoint-interval=")).findAny().ifPresent(arg -> {
+			SpringConfiguration.checkpointInterval = Long.parseLong(arg.substring(arg.indexOf('=') + 1));
+		});
+		arguments.stream().filter(arg -> arg.startsWith("--sync=")).findAny().ifPresent(arg -> {
+			SpringConfiguration.syncPolicy = SyncPolicy.valueOf(arg.substring(arg.indexOf('=') + 1).replace('-', '_').toUpperCase());
+		});
+		arguments.stream().filter(arg -> arg.startsWith("--layout=")).findAny().ifPresent(arg -> {
+			SpringConfiguration.storageLayout = StorageLayout.of(arg.substring(arg.indexOf('=') + 1));
+		});
+		arguments.stream().filter(arg -> arg.startsWith("--codec=")).findAny().ifPresent(arg -> {
+			// Either a codec for all repositories or a comma separated list of repository:codec pairs
+			for (String codec : arg.substring(arg.indexOf('=') + 1).split(",")) {
+				if (codec.contains(":")) {
+					SpringConfiguration.storageCodecs.put(codec.substring(0, codec.indexOf(':')), StorageCodec.of(codec.substring(codec.indexOf(':') + 1)));
+				} else {
+					SpringConfiguration.storageCodec = StorageCodec.of(codec);
+				}
+			}
+		});
+		arguments.stream().filter(arg -> arg.startsWith("--retention=")).findAny().ifPresent(arg -> {
+			SpringConfiguration.retentionDays = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+		});
+		arguments.stream().filter(arg -> arg.startsWith("--line-cache=")).findAny().ifPresent(arg -> {
+			SpringConfiguration.lineCacheSize = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+		});
+		arguments.stream().filter(arg -> arg.startsWith("--traffic-cache=")).findAny().ifPresent(arg -> {
+			SpringConfiguration.stationTrafficCacheSize = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+		});
+		arguments.stream().filter(arg -> arg.startsWith("--board-cache=")).findAny().ifPresent(arg -> {
+			// Upper bound of cached board entries across all station days, zero disables the cache
+			SpringConfiguration.boardCacheSize = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+		});
+		arguments.stream().filter(arg -> arg.startsWith("--index-threads=")).findAny().ifPresent(arg -> {
+			SpringConfiguration.indexingThreads = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+		});
 		
 		final Properties properties = new Properties();
 		properties.put("server.error.include-message", "always");
@@ -72,8 +72,16 @@ public class LineStop {
 		return delay;
 	}
 	
+	public void setDelay(int delay) {
+		this.delay = delay;
+	}
+	
 	public boolean isCancelled() {
 		return cancelled;
 	}
+	
+	public void setCancelled(boolean cancelled) {
+		this.cancelled = cancelled;
+	}
 
 }
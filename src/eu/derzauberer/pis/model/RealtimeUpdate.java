@@ -0,0 +1,61 @@
+package eu.derzauberer.pis.model;
+
+import java.util.Objects;
+
+public class RealtimeUpdate {
+	
+	private String lineId;
+	private int stopPosition;
+	private Integer delay;
+	private Integer changedPlatform;
+	private String changedPlatfromArea;
+	private Boolean cancelled;
+	
+	private RealtimeUpdate() {}
+	
+	public RealtimeUpdate(String lineId, int stopPosition) {
+		this.lineId = Objects.requireNonNull(lineId);
+		this.stopPosition = stopPosition;
+	}
+	
+	public String getLineId() {
+		return lineId;
+	}
+	
+	public int getStopPosition() {
+		return stopPosition;
+	}
+	
+	public Integer getDelay() {
+		return delay;
+	}
+	
+	public Integer getChangedPlatform() {
+		return changedPlatform;
+	}
+	
+	public String getChangedPlatfromArea() {
+		return changedPlatfromArea;
+	}
+	
+	public Boolean getCancelled() {
+		return cancelled;
+	}
+	
+	public RealtimeUpdate merge(RealtimeUpdate update) {
+		final RealtimeUpdate merged = new RealtimeUpdate(lineId, stopPosition);
+		merged.delay = update.delay != null ? update.delay : delay;
+		merged.changedPlatform = update.changedPlatform != null ? update.changedPlatform : changedPlatform;
+		merged.changedPlatfromArea = update.changedPlatfromArea != null ? update.changedPlatfromArea : changedPlatfromArea;
+		merged.cancelled = update.cancelled != null ? update.cancelled : cancelled;
+		return merged;
+	}
+	
+	public void applyTo(LineStop stop) {
+		if (delay != null) stop.setDelay(delay);
+		if (changedPlatform != null) stop.setChangedPlatform(changedPlatform);
+		if (changedPlatfromArea != null) stop.setChangedPlatfromArea(changedPlatfromArea);
+		if (cancelled != null) stop.setCancelled(cancelled);
+	}
+	
+}
@@ -3,17 +3,34 @@ package eu.derzauberer.pis.model;
 import java.beans.ConstructorProperties;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.TreeMap;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+@JsonPropertyOrder({ "id", "departures", "arrivals" })
 public class StationTraffic implements Entity<StationTraffic> {
 	
 	private final String id;
-	private final Map<Integer, SortedSet<StationTrafficEntry>> departures = new HashMap<>();
-	private final Map<Integer, SortedSet<StationTrafficEntry>> arrivals = new HashMap<>();
+	@JsonIgnore
+	private final TrafficTable departureTable = new TrafficTable();
+	@JsonIgnore
+	private final TrafficTable arrivalTable = new TrafficTable();
+	@JsonIgnore
+	private final List<String> lineIds = new ArrayList<>();
+	@JsonIgnore
+	private final Map<String, Integer> lineIndices = new HashMap<>();
+	
+	private static final byte LAST_STATION = 1;
+	private static final byte REMOVED = 2;
+	private static final int HOURS = 24;
 	
 	@ConstructorProperties({ "id" })
 	private StationTraffic(String id) {
@@ -29,48 +46,221 @@ public class StationTraffic implements Entity<StationTraffic> {
 		return id;
 	}
 	
+	public LocalDate getDate() {
+		final String date = id.substring(id.lastIndexOf('_') + 1);
+		return LocalDate.of(Integer.parseInt(date.substring(0, 4)), Integer.parseInt(date.substring(4, 6)), Integer.parseInt(date.substring(6, 8)));
+	}
+	
 	public void addDeparture(StationTrafficEntry entry) {
-		final int hour = entry.getTime().getHour();
-		if (departures.get(hour) == null) departures.put(hour, new TreeSet<>());
-		departures.get(hour).add(entry);
+		departureTable.add(entry);
 	}
 	
 	public void removeDeparture(LocalTime time, String lineId) {
-		if (departures.get(time.getHour()) == null) return; 
-		departures.get(time.getHour()).stream()
-			.filter(entry -> entry.getLineId().equals(lineId))
-			.findAny()
-			.ifPresent(departures.get(time.getHour())::remove);
-		if (departures.get(time.getHour()).isEmpty()) departures.remove(time.getHour());
+		departureTable.remove(time, lineId);
+	}
+	
+	public List<StationTrafficEntry> getDeparturesInHour(int hour) {
+		compact();
+		return departureTable.getRange(departureTable.indexOfHour(hour), departureTable.indexOfHour(hour + 1));
+	}
+	
+	public List<StationTrafficEntry> getDepartures() {
+		compact();
+		return departureTable.getRange(0, departureTable.size);
 	}
 	
-	public SortedSet<StationTrafficEntry> getDeparturesInHour(int hour) {
-		final SortedSet<StationTrafficEntry> departureSet = departures.get(hour);
-		return Collections.unmodifiableSortedSet(departureSet != null ? departureSet : new TreeSet<>());
+	public int getAmountOfDeparturesBeforeHour(int hour) {
+		compact();
+		return departureTable.indexOfHour(hour);
 	}
 	
 	public void addArrival(StationTrafficEntry entry) {
-		final int hour = entry.getTime().getHour();
-		if (arrivals.get(hour) == null) arrivals.put(hour, new TreeSet<>());
-		arrivals.get(hour).add(entry);
+		arrivalTable.add(entry);
 	}
 	
 	public void removeArrival(LocalTime time, String lineId) {
-		if (arrivals.get(time.getHour()) == null) return; 
-		arrivals.get(time.getHour()).stream()
-				.filter(entry -> entry.getLineId().equals(lineId))
-				.findAny()
-				.ifPresent(arrivals.get(time.getHour())::remove);
-		if (arrivals.get(time.getHour()).isEmpty()) arrivals.remove(time.getHour());
+		arrivalTable.remove(time, lineId);
+	}
+	
+	public List<StationTrafficEntry> getArrivalsInHour(int hour) {
+		compact();
+		return arrivalTable.getRange(arrivalTable.indexOfHour(hour), arrivalTable.indexOfHour(hour + 1));
 	}
 	
-	public SortedSet<StationTrafficEntry> getArrivalsInHour(int hour) {
-		final SortedSet<StationTrafficEntry> arrivalSet = arrivals.get(hour);
-		return Collections.unmodifiableSortedSet(arrivalSet != null ? arrivalSet : new TreeSet<>());
+	public List<StationTrafficEntry> getArrivals() {
+		compact();
+		return arrivalTable.getRange(0, arrivalTable.size);
+	}
+	
+	public int getAmountOfArrivalsBeforeHour(int hour) {
+		compact();
+		return arrivalTable.indexOfHour(hour);
 	}
 	
 	public static String createIdFormNameAndDate(String stationId, LocalDate date) {
 		return String.format("%1$s_%2$04d%3$02d%4$02d", stationId, date.getYear(), date.getMonthValue(), date.getDayOfMonth());
 	}
+	
+	@JsonProperty("departures")
+	private Map<Integer, List<StationTrafficEntry>> getDeparturesByHour() {
+		compact();
+		return departureTable.getByHour();
+	}
+	
+	@JsonProperty("departures")
+	private void setDeparturesByHour(Map<Integer, List<StationTrafficEntry>> departures) {
+		departures.values().forEach(entries -> entries.forEach(this::addDeparture));
+	}
+	
+	@JsonProperty("arrivals")
+	private Map<Integer, List<StationTrafficEntry>> getArrivalsByHour() {
+		compact();
+		return arrivalTable.getByHour();
+	}
+	
+	@JsonProperty("arrivals")
+	private void setArrivalsByHour(Map<Integer, List<StationTrafficEntry>> arrivals) {
+		arrivals.values().forEach(entries -> entries.forEach(this::addArrival));
+	}
+	
+	private void compact() {
+		// Removed entries are only marked and dropped on the next read, together with line ids that lost their last entry
+		if (departureTable.removed == 0 && arrivalTable.removed == 0) return;
+		final List<String> previousLineIds = new ArrayList<>(lineIds);
+		lineIds.clear();
+		lineIndices.clear();
+		departureTable.compact(previousLineIds);
+		arrivalTable.compact(previousLineIds);
+	}
+	
+	private int getLineIndex(String lineId) {
+		final Integer index = lineIndices.get(lineId);
+		if (index != null) return index;
+		lineIndices.put(lineId, lineIds.size());
+		lineIds.add(lineId);
+		return lineIds.size() - 1;
+	}
+	
+	// Parallel arrays ordered by minute, line and position, hours holds the slots before each hour
+	private class TrafficTable {
+		
+		private short[] minutes = new short[0];
+		private int[] lines = new int[0];
+		private short[] positions = new short[0];
+		private short[] platforms = new short[0];
+		private byte[] flags = new byte[0];
+		private final int[] hours = new int[HOURS + 1];
+		private int size;
+		private int removed;
+		
+		private void add(StationTrafficEntry entry) {
+			final int minute = entry.getTime().getHour() * 60 + entry.getTime().getMinute();
+			// Entries are mostly added in order when loaded, so check the end before searching
+			final int index = size > 0 && compare(size - 1, minute, entry.getLineId(), entry.getStationPosition()) < 0
+					? size : search(minute, entry.getLineId(), entry.getStationPosition());
+			if (index < size && compare(index, minute, entry.getLineId(), entry.getStationPosition()) == 0) {
+				// A removed entry is revived in its slot, so a line that is removed and added again doesn't shift the table
+				if ((flags[index] & REMOVED) == 0) return;
+				platforms[index] = (short) entry.getPlatform();
+				flags[index] = entry.isLastStation() ? LAST_STATION : 0;
+				removed--;
+				return;
+			}
+			if (size == minutes.length) grow();
+			final int moved = size - index;
+			if (moved > 0) {
+				System.arraycopy(minutes, index, minutes, index + 1, moved);
+				System.arraycopy(lines, index, lines, index + 1, moved);
+				System.arraycopy(positions, index, positions, index + 1, moved);
+				System.arraycopy(platforms, index, platforms, index + 1, moved);
+				System.arraycopy(flags, index, flags, index + 1, moved);
+			}
+			minutes[index] = (short) minute;
+			lines[index] = getLineIndex(entry.getLineId());
+			positions[index] = (short) entry.getStationPosition();
+			platforms[index] = (short) entry.getPlatform();
+			flags[index] = entry.isLastStation() ? LAST_STATION : 0;
+			for (int hour = minute / 60 + 1; hour <= HOURS; hour++) hours[hour]++;
+			size++;
+		}
+		
+		private void remove(LocalTime time, String lineId) {
+			final int minute = time.getHour() * 60 + time.getMinute();
+			for (int index = search(minute, lineId, Integer.MIN_VALUE); index < size && minutes[index] == minute && lineIds.get(lines[index]).equals(lineId); index++) {
+				if ((flags[index] & REMOVED) != 0) continue;
+				flags[index] |= REMOVED;
+				removed++;
+				return;
+			}
+		}
+		
+		private void compact(List<String> previousLineIds) {
+			int live = 0;
+			Arrays.fill(hours, 0);
+			for (int i = 0; i < size; i++) {
+				if ((flags[i] & REMOVED) != 0) continue;
+				minutes[live] = minutes[i];
+				lines[live] = getLineIndex(previousLineIds.get(lines[i]));
+				positions[live] = positions[i];
+				platforms[live] = platforms[i];
+				flags[live] = flags[i];
+				hours[minutes[i] / 60 + 1]++;
+				live++;
+			}
+			for (int hour = 1; hour <= HOURS; hour++) hours[hour] += hours[hour - 1];
+			size = live;
+			removed = 0;
+		}
+		
+		private int indexOfHour(int hour) {
+			return hours[Math.max(0, Math.min(HOURS, hour))];
+		}
+		
+		private List<StationTrafficEntry> getRange(int begin, int end) {
+			final List<StationTrafficEntry> entries = new ArrayList<>(end - begin);
+			for (int i = begin; i < end; i++) entries.add(getEntry(i));
+			return Collections.unmodifiableList(entries);
+		}
+		
+		private Map<Integer, List<StationTrafficEntry>> getByHour() {
+			final Map<Integer, List<StationTrafficEntry>> entries = new TreeMap<>();
+			for (int i = 0; i < size; i++) {
+				entries.computeIfAbsent(minutes[i] / 60, hour -> new ArrayList<>()).add(getEntry(i));
+			}
+			return entries;
+		}
+		
+		private StationTrafficEntry getEntry(int index) {
+			return new StationTrafficEntry(LocalTime.of(minutes[index] / 60, minutes[index] % 60), lineIds.get(lines[index]), positions[index], platforms[index], null, (flags[index] & LAST_STATION) != 0);
+		}
+		
+		private int search(int minute, String lineId, int position) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (compare(middle, minute, lineId, position) < 0) low = middle + 1;
+				else high = middle;
+			}
+			return low;
+		}
+		
+		private int compare(int index, int minute, String lineId, int position) {
+			if (minutes[index] != minute) return Integer.compare(minutes[index], minute);
+			final int lineComparison = lineIds.get(lines[index]).compareTo(lineId);
+			if (lineComparison != 0) return lineComparison;
+			return Integer.compare(positions[index], position);
+		}
+		
+		private void grow() {
+			final int capacity = Math.max(8, minutes.length * 2);
+			minutes = Arrays.copyOf(minutes, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+			platforms = Arrays.copyOf(platforms, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+		}
+	
+	}
 
 }
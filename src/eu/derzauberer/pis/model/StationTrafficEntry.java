@@ -8,7 +8,12 @@ public class StationTrafficEntry implements Comparable<StationTrafficEntry> {
 	private final LocalTime time;
 	private final String lineId;
 	private final int stationPosition;
+	private final int platform;
 	private final boolean lastStation;
+	private Integer delay;
+	private Integer changedPlatform;
+	private String changedPlatfromArea;
+	private Boolean cancelled;
 	
 	@ConstructorProperties({ "time", "lineId", "stationPosition", "platform", "platfromArea", "lastStation" })
 	public StationTrafficEntry(LocalTime time, String lineId, int stationPosition, int platform, String platfromArea, boolean lastStation) {
@@ -16,6 +21,7 @@ public class StationTrafficEntry implements Comparable<StationTrafficEntry> {
 		this.time = time;
 		this.lineId = lineId;
 		this.stationPosition = stationPosition;
+		this.platform = platform;
 		this.lastStation = lastStation;
 	}
 	
@@ -31,13 +37,46 @@ public class StationTrafficEntry implements Comparable<StationTrafficEntry> {
 		return stationPosition;
 	}
 	
+	public int getPlatform() {
+		return platform;
+	}
+	
 	public boolean isLastStation() {
 		return lastStation;
 	}
 	
+	public Integer getDelay() {
+		return delay;
+	}
+	
+	public Integer getChangedPlatform() {
+		return changedPlatform;
+	}
+	
+	public String getChangedPlatfromArea() {
+		return changedPlatfromArea;
+	}
+	
+	public Boolean getCancelled() {
+		return cancelled;
+	}
+	
+	public StationTrafficEntry withRealtime(RealtimeUpdate update) {
+		final StationTrafficEntry entry = new StationTrafficEntry(time, lineId, stationPosition, platform, null, lastStation);
+		entry.delay = update.getDelay();
+		entry.changedPlatform = update.getChangedPlatform();
+		entry.changedPlatfromArea = update.getChangedPlatfromArea();
+		entry.cancelled = update.getCancelled();
+		return entry;
+	}
+	
 	@Override
 	public int compareTo(StationTrafficEntry entry) {
-		return time.compareTo(entry.getTime());
+		final int timeComparison = time.compareTo(entry.getTime());
+		if (timeComparison != 0) return timeComparison;
+		final int lineComparison = lineId.compareTo(entry.getLineId());
+		if (lineComparison != 0) return lineComparison;
+		return Integer.compare(stationPosition, entry.getStationPosition());
 	}
 
 }
@@ -0,0 +1,291 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.derzauberer.pis.model.Entity;
+
+public class ArchivingEntityRepository<T extends Entity<T>> extends EntityRepository<T> {
+
+	private final EntityRepository<T> repository;
+	private final Function<T, LocalDate> dateFunction;
+	private final int retentionDays;
+	private final EntityArchive archive;
+	private final ScheduledExecutorService archiver;
+	private final List<Consumer<Collection<T>>> onArchive = new CopyOnWriteArrayList<>();
+	private final Object writeLock = new Object();
+	private final AtomicLong archiveReads = new AtomicLong();
+	private volatile long lastArchiveRun;
+	private volatile int lastArchived;
+
+	private static final int SCAN_PAGE_SIZE = 500;
+	private static final int ARCHIVE_BATCH_SIZE = 10000;
+	private static final long ARCHIVE_INTERVAL = TimeUnit.DAYS.toSeconds(1);
+	protected static final Logger LOGGER = LoggerFactory.getLogger(ArchivingEntityRepository.class);
+
+	public ArchivingEntityRepository(EntityRepository<T> repository, Function<T, LocalDate> dateFunction, int retentionDays) {
+		super(repository, LOGGER);
+		if (retentionDays < 0) throw new IllegalArgumentException("Retention has to be at least zero days!");
+		this.repository = repository;
+		this.dateFunction = dateFunction;
+		this.retentionDays = retentionDays;
+		try {
+			archive = new EntityArchive(repository.getName());
+		} catch (IOException exception) {
+			throw new IllegalStateException("Couldn't open archive of " + repository.getName() + ": " + exception.getMessage(), exception);
+		}
+		archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "archive-" + repository.getName());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public void startArchiving() {
+		archiver.scheduleWithFixedDelay(this::archiveExpired, 0, ARCHIVE_INTERVAL, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void add(T entity) {
+		synchronized (writeLock) {
+			repository.add(entity);
+			if (archive.contains(entity.getId())) removeArchived(List.of(entity.getId()));
+		}
+	}
+
+	@Override
+	public void addAll(Collection<T> entities) {
+		synchronized (writeLock) {
+			repository.addAll(entities);
+			// A written entity replaces its archived version
+			final List<String> archivedIds = entities.stream().map(Entity::getId).filter(archive::contains).toList();
+			if (!archivedIds.isEmpty()) removeArchived(archivedIds);
+		}
+	}
+
+	@Override
+	public boolean removeById(String id) {
+		Objects.requireNonNull(id);
+		synchronized (writeLock) {
+			final boolean archived = !removeArchived(List.of(id)).isEmpty();
+			return repository.removeById(id) || archived;
+		}
+	}
+
+	@Override
+	public int removeAll(Collection<String> ids) {
+		synchronized (writeLock) {
+			int archived = 0;
+			for (String id : removeArchived(ids)) {
+				if (!repository.containsById(id)) archived++;
+			}
+			return repository.removeAll(ids) + archived;
+		}
+	}
+
+	@Override
+	public boolean containsById(String id) {
+		Objects.requireNonNull(id);
+		return repository.containsById(id);
+	}
+
+	@Override
+	public Optional<T> getById(String id) {
+		return repository.getById(id);
+	}
+
+	@Override
+	public Optional<T> getCopyById(String id) {
+		return repository.getCopyById(id);
+	}
+
+	@Override
+	public Optional<T> getArchivedById(String id) {
+		if (id == null || !archive.contains(id)) return Optional.empty();
+		return readArchived(id);
+	}
+
+	@Override
+	public void addOnArchive(Consumer<Collection<T>> action) {
+		onArchive.add(action);
+	}
+
+	@Override
+	public List<T> getAll() {
+		return repository.getAll();
+	}
+
+	@Override
+	public List<T> getRange(int beginn, int end) {
+		return repository.getRange(beginn, end);
+	}
+
+	@Override
+	public List<T> getRangeAfter(String id, int limit) {
+		return repository.getRangeAfter(id, limit);
+	}
+
+	@Override
+	public int size() {
+		return repository.size();
+	}
+
+	@Override
+	public StorageLayout getLayout() {
+		return repository.getLayout();
+	}
+
+	@Override
+	public int migrateLayout(StorageLayout layout) {
+		return repository.migrateLayout(layout);
+	}
+
+	@Override
+	public StorageCodec getCodec() {
+		return repository.getCodec();
+	}
+
+	@Override
+	public int recodeEntities() {
+		return repository.recodeEntities();
+	}
+
+	@Override
+	public <K extends Comparable<? super K>> void registerIndex(String indexName, Class<K> keyType, Function<T, Collection<K>> keyFunction) {
+		repository.registerIndex(indexName, keyType, keyFunction);
+	}
+
+	@Override
+	public <K extends Comparable<? super K>> List<String> findIdsByIndex(String indexName, K key) {
+		return repository.findIdsByIndex(indexName, key);
+	}
+
+	@Override
+	public <K extends Comparable<? super K>> List<String> findIdsByIndexRange(String indexName, K from, K to) {
+		return repository.findIdsByIndexRange(indexName, from, to);
+	}
+
+	@Override
+	public List<String> getIdsModifiedSince(long timestamp) {
+		return repository.getIdsModifiedSince(timestamp);
+	}
+
+	@Override
+	public Map<String, Object> getStatistics() {
+		final Map<String, Object> statistics = repository.getStatistics();
+		statistics.put("retentionDays", retentionDays);
+		statistics.put("archivedEntities", archive.size());
+		statistics.put("archivedMonths", archive.monthCount());
+		statistics.put("archiveReads", archiveReads.get());
+		statistics.put("lastArchiveRun", lastArchiveRun);
+		statistics.put("lastArchived", lastArchived);
+		return statistics;
+	}
+
+	@Override
+	public void close() {
+		archiver.shutdownNow();
+		repository.close();
+	}
+
+	public synchronized int archiveExpired() {
+		final LocalDate cutoff = LocalDate.now().minusDays(retentionDays);
+		final List<String> expiredIds = new ArrayList<>();
+		try {
+			List<T> page = repository.getRange(0, Math.min(repository.size(), SCAN_PAGE_SIZE));
+			while (!page.isEmpty()) {
+				for (T entity : page) {
+					final LocalDate date = dateFunction.apply(entity);
+					if (date != null && date.isBefore(cutoff)) expiredIds.add(entity.getId());
+				}
+				page = repository.getRangeAfter(page.get(page.size() - 1).getId(), SCAN_PAGE_SIZE);
+			}
+			int archived = 0;
+			for (int i = 0; i < expiredIds.size(); i += ARCHIVE_BATCH_SIZE) {
+				archived += archiveBatch(expiredIds.subList(i, Math.min(expiredIds.size(), i + ARCHIVE_BATCH_SIZE)));
+			}
+			lastArchiveRun = System.currentTimeMillis();
+			lastArchived = archived;
+			if (archived > 0) LOGGER.info("Archived {} {} older than {}", archived, getName(), cutoff);
+			return archived;
+		} catch (IOException | RuntimeException exception) {
+			LOGGER.error("Couldn't archive {}: {} {}", getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			return 0;
+		}
+	}
+
+	private int archiveBatch(List<String> ids) throws IOException {
+		final Map<String, byte[]> records = new LinkedHashMap<>();
+		final Map<String, YearMonth> months = new HashMap<>();
+		for (String id : ids) {
+			final Optional<T> entity = repository.getById(id);
+			if (entity.isEmpty()) continue;
+			records.put(id, OBJECT_MAPPER.writeValueAsBytes(entity.get()));
+			months.put(id, YearMonth.from(dateFunction.apply(entity.get())));
+		}
+		// Entities are only removed from the hot repository once their archive is on disk
+		archive.archive(records, months);
+		final List<T> archived = new ArrayList<>(records.size());
+		final List<String> changedIds = new ArrayList<>();
+		synchronized (writeLock) {
+			// Entities written or removed in the meantime keep their newer state
+			for (Map.Entry<String, byte[]> record : records.entrySet()) {
+				final Optional<T> entity = repository.getById(record.getKey());
+				if (entity.isPresent() && Arrays.equals(OBJECT_MAPPER.writeValueAsBytes(entity.get()), record.getValue())) {
+					archived.add(entity.get());
+				} else {
+					changedIds.add(record.getKey());
+				}
+			}
+			if (!changedIds.isEmpty()) archive.removeAll(changedIds);
+			if (!archived.isEmpty()) {
+				repository.removeAll(archived.stream().map(Entity::getId).toList());
+				onArchive.forEach(consumer -> consumer.accept(archived));
+			}
+		}
+		return archived.size();
+	}
+
+	private Optional<T> readArchived(String id) {
+		try {
+			final byte[] record = archive.get(id);
+			if (record == null) return Optional.empty();
+			archiveReads.incrementAndGet();
+			return Optional.of(OBJECT_MAPPER.readValue(record, getType()));
+		} catch (IOException exception) {
+			LOGGER.error("Couldn't load archived entity with id {} from {}: {} {}!", id, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			return Optional.empty();
+		}
+	}
+
+	private Set<String> removeArchived(Collection<String> ids) {
+		try {
+			return archive.removeAll(ids);
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't delete {} archived entities from {}: {} {}", ids.size(), getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			return Set.of();
+		}
+	}
+
+}
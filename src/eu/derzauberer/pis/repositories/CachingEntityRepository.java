@@ -0,0 +1,310 @@
+package eu.derzauberer.pis.repositories;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.derzauberer.pis.model.Entity;
+
+public class CachingEntityRepository<T extends Entity<T>> extends EntityRepository<T> {
+
+	private final EntityRepository<T> repository;
+	private final int capacity;
+	private final LinkedHashMap<String, T> cache;
+	private final FrequencySketch sketch;
+	private long generation;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long rejections;
+
+	protected static final Logger LOGGER = LoggerFactory.getLogger(CachingEntityRepository.class);
+
+	public CachingEntityRepository(EntityRepository<T> repository, int capacity) {
+		super(repository, LOGGER);
+		if (capacity < 1) throw new IllegalArgumentException("Cache capacity has to be larger than zero!");
+		this.repository = repository;
+		this.capacity = capacity;
+		this.cache = new LinkedHashMap<>(capacity, 0.75F, true);
+		this.sketch = new FrequencySketch(capacity);
+		repository.addOnArchive(this::evict);
+		LOGGER.info("Caching up to {} {}", capacity, repository.getName());
+	}
+
+	@Override
+	public void add(T entity) {
+		Objects.requireNonNull(entity);
+		Objects.requireNonNull(entity.getId());
+		final long writeGeneration = getGeneration();
+		repository.add(entity);
+		final T copy = copy(entity);
+		synchronized (this) {
+			sketch.increment(entity.getId());
+			update(copy, writeGeneration);
+			generation++;
+		}
+	}
+
+	@Override
+	public void addAll(Collection<T> entities) {
+		final long writeGeneration = getGeneration();
+		repository.addAll(entities);
+		final List<T> copies = entities.stream().map(this::copy).toList();
+		synchronized (this) {
+			for (T copy : copies) {
+				sketch.increment(copy.getId());
+				update(copy, writeGeneration);
+			}
+			generation++;
+		}
+	}
+	
+	@Override
+	public boolean removeById(String id) {
+		Objects.requireNonNull(id);
+		final boolean removed = repository.removeById(id);
+		synchronized (this) {
+			cache.remove(id);
+			generation++;
+		}
+		return removed;
+	}
+
+	@Override
+	public int removeAll(Collection<String> ids) {
+		final int removed = repository.removeAll(ids);
+		synchronized (this) {
+			ids.forEach(cache::remove);
+			generation++;
+		}
+		return removed;
+	}
+	
+	@Override
+	public boolean containsById(String id) {
+		Objects.requireNonNull(id);
+		synchronized (this) {
+			if (cache.containsKey(id)) return true;
+		}
+		return repository.containsById(id);
+	}
+
+	@Override
+	public Optional<T> getById(String id) {
+		if (id == null) return Optional.empty();
+		final long loadGeneration;
+		synchronized (this) {
+			sketch.increment(id);
+			final T cached = cache.get(id);
+			if (cached != null) {
+				hits++;
+				return Optional.of(cached);
+			}
+			misses++;
+			loadGeneration = generation;
+		}
+		final Optional<T> entity = repository.getById(id);
+		if (entity.isPresent()) {
+			final T copy = copy(entity.get());
+			synchronized (this) {
+				// An entity loaded while it was written or removed may already be outdated
+				if (loadGeneration == generation && !cache.containsKey(id)) admit(id, copy);
+			}
+		}
+		return entity;
+	}
+
+	@Override
+	public Optional<T> getCopyById(String id) {
+		if (id == null) return Optional.empty();
+		synchronized (this) {
+			final T cached = cache.get(id);
+			if (cached != null) return Optional.of(copy(cached));
+		}
+		return repository.getCopyById(id);
+	}
+
+	@Override
+	public Optional<T> getArchivedById(String id) {
+		return repository.getArchivedById(id);
+	}
+
+	@Override
+	public void addOnArchive(Consumer<Collection<T>> action) {
+		repository.addOnArchive(action);
+	}
+
+	@Override
+	public List<T> getAll() {
+		return repository.getAll();
+	}
+
+	@Override
+	public List<T> getRange(int beginn, int end) {
+		return repository.getRange(beginn, end);
+	}
+
+	@Override
+	public List<T> getRangeAfter(String id, int limit) {
+		return repository.getRangeAfter(id, limit);
+	}
+
+	@Override
+	public int size() {
+		return repository.size();
+	}
+
+	@Override
+	public StorageLayout getLayout() {
+		return repository.getLayout();
+	}
+
+	@Override
+	public int migrateLayout(StorageLayout layout) {
+		return repository.migrateLayout(layout);
+	}
+
+	@Override
+	public StorageCodec getCodec() {
+		return repository.getCodec();
+	}
+	
+	@Override
+	public int recodeEntities() {
+		return repository.recodeEntities();
+	}
+	
+	@Override
+	public <K extends Comparable<? super K>> void registerIndex(String indexName, Class<K> keyType, Function<T, Collection<K>> keyFunction) {
+		repository.registerIndex(indexName, keyType, keyFunction);
+	}
+	
+	@Override
+	public <K extends Comparable<? super K>> List<String> findIdsByIndex(String indexName, K key) {
+		return repository.findIdsByIndex(indexName, key);
+	}
+	
+	@Override
+	public <K extends Comparable<? super K>> List<String> findIdsByIndexRange(String indexName, K from, K to) {
+		return repository.findIdsByIndexRange(indexName, from, to);
+	}
+	
+	@Override
+	public List<String> getIdsModifiedSince(long timestamp) {
+		return repository.getIdsModifiedSince(timestamp);
+	}
+
+	@Override
+	public Map<String, Object> getStatistics() {
+		final Map<String, Object> statistics = repository.getStatistics();
+		synchronized (this) {
+			final long requests = hits + misses;
+			statistics.put("cacheSize", cache.size());
+			statistics.put("cacheCapacity", capacity);
+			statistics.put("cacheHits", hits);
+			statistics.put("cacheMisses", misses);
+			statistics.put("cacheHitRate", requests == 0 ? 0.0 : (double) hits / requests);
+			statistics.put("cacheEvictions", evictions);
+			statistics.put("cacheRejections", rejections);
+		}
+		return statistics;
+	}
+
+	@Override
+	public void close() {
+		repository.close();
+	}
+
+	private synchronized void evict(Collection<T> entities) {
+		entities.forEach(entity -> cache.remove(entity.getId()));
+		generation++;
+	}
+
+	private synchronized long getGeneration() {
+		return generation;
+	}
+
+	private void update(T copy, long writeGeneration) {
+		// A concurrent write may have stored a newer version first, so only an uncontested write is cached
+		if (writeGeneration != generation) {
+			cache.remove(copy.getId());
+		} else if (cache.containsKey(copy.getId())) {
+			cache.put(copy.getId(), copy);
+		} else {
+			admit(copy.getId(), copy);
+		}
+	}
+
+	private void admit(String id, T entity) {
+		if (cache.size() >= capacity) {
+			final String victim = cache.keySet().iterator().next();
+			if (sketch.frequency(id) <= sketch.frequency(victim)) {
+				rejections++;
+				return;
+			}
+			cache.remove(victim);
+			evictions++;
+		}
+		cache.put(id, entity);
+	}
+
+	private static class FrequencySketch {
+
+		private final int[][] table;
+		private final int mask;
+		private final int sampleSize;
+		private int additions;
+
+		private static final int DEPTH = 4;
+		private static final int MAX_FREQUENCY = 15;
+		private static final int[] SEEDS = { 0x97CB3127, 0xB492B66F, 0x9AE16A3B, 0xCBF29CE5 };
+
+		private FrequencySketch(int capacity) {
+			final int width = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+			table = new int[DEPTH][width];
+			mask = width - 1;
+			sampleSize = 10 * Math.max(16, capacity);
+		}
+
+		private void increment(String id) {
+			final int hash = id.hashCode();
+			for (int i = 0; i < DEPTH; i++) {
+				final int index = index(hash, i);
+				if (table[i][index] < MAX_FREQUENCY) table[i][index]++;
+			}
+			if (++additions >= sampleSize) reset();
+		}
+
+		private int frequency(String id) {
+			final int hash = id.hashCode();
+			int frequency = MAX_FREQUENCY;
+			for (int i = 0; i < DEPTH; i++) {
+				frequency = Math.min(frequency, table[i][index(hash, i)]);
+			}
+			return frequency;
+		}
+
+		private int index(int hash, int row) {
+			int mixed = hash * SEEDS[row];
+			mixed ^= mixed >>> 16;
+			return mixed & mask;
+		}
+
+		private void reset() {
+			for (int[] row : table) {
+				for (int i = 0; i < row.length; i++) row[i] >>>= 1;
+			}
+			additions /= 2;
+		}
+
+	}
+
+}
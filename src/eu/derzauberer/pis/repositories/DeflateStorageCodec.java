@@ -0,0 +1,45 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class DeflateStorageCodec implements StorageCodec {
+	
+	private static final int ZLIB_HEADER = 0x78;
+	
+	@Override
+	public String getName() {
+		return "deflate";
+	}
+	
+	@Override
+	public byte[] encode(ObjectMapper mapper, Object entity) throws IOException {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		try (DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(output, deflater)) {
+			mapper.writeValue(deflaterOutput, entity);
+		} finally {
+			deflater.end();
+		}
+		return output.toByteArray();
+	}
+	
+	@Override
+	public boolean canDecode(int firstByte) {
+		return firstByte == ZLIB_HEADER;
+	}
+	
+	@Override
+	public <T> T decode(ObjectMapper mapper, InputStream input, Class<T> type) throws IOException {
+		try (InflaterInputStream inflaterInput = new InflaterInputStream(input)) {
+			return mapper.readValue(inflaterInput, type);
+		}
+	}
+
+}
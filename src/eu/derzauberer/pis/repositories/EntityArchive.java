@@ -0,0 +1,151 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class EntityArchive {
+
+	private final Path directory;
+	private final Path indexPath;
+	private final Map<String, YearMonth> months = new HashMap<>();
+	private final LinkedHashMap<YearMonth, Map<String, byte[]>> openMonths = new LinkedHashMap<>(4, 0.75F, true);
+
+	protected static final String ARCHIVE_DIRECTORY = "data/archives";
+	private static final String ARCHIVE_FILE_TYPE = ".bin.gz";
+	private static final String INDEX_FILE_TYPE = ".ids";
+	private static final int MAGIC = 0x50495341;
+	private static final int VERSION = 1;
+	private static final int OPEN_MONTHS = 2;
+
+	public EntityArchive(String name) throws IOException {
+		directory = Paths.get(ARCHIVE_DIRECTORY, name);
+		indexPath = Paths.get(ARCHIVE_DIRECTORY, name + INDEX_FILE_TYPE);
+		Files.createDirectories(directory);
+		if (Files.exists(indexPath)) {
+			for (String line : Files.readAllLines(indexPath, StandardCharsets.UTF_8)) {
+				final int separator = line.indexOf('\t');
+				if (separator < 0) continue;
+				months.put(line.substring(separator + 1), YearMonth.parse(line.substring(0, separator)));
+			}
+		}
+	}
+
+	public synchronized boolean contains(String id) {
+		return months.containsKey(id);
+	}
+
+	public synchronized int size() {
+		return months.size();
+	}
+
+	public synchronized int monthCount() {
+		return (int) months.values().stream().distinct().count();
+	}
+
+	public synchronized byte[] get(String id) throws IOException {
+		final YearMonth month = months.get(id);
+		if (month == null) return null;
+		return readMonth(month).get(id);
+	}
+
+	public synchronized void archive(Map<String, byte[]> records, Map<String, YearMonth> recordMonths) throws IOException {
+		final Map<YearMonth, Map<String, byte[]>> recordsByMonth = new TreeMap<>();
+		records.forEach((id, record) -> recordsByMonth.computeIfAbsent(recordMonths.get(id), month -> new LinkedHashMap<>()).put(id, record));
+		for (Map.Entry<YearMonth, Map<String, byte[]>> entry : recordsByMonth.entrySet()) {
+			// Records that were removed or archived again in another month are dropped when their month is rewritten
+			final Map<String, byte[]> monthRecords = new TreeMap<>();
+			readMonth(entry.getKey()).forEach((id, record) -> {
+				if (entry.getKey().equals(months.get(id))) monthRecords.put(id, record);
+			});
+			monthRecords.putAll(entry.getValue());
+			writeMonth(entry.getKey(), monthRecords);
+			entry.getValue().keySet().forEach(id -> months.put(id, entry.getKey()));
+		}
+		writeIndex();
+	}
+
+	public synchronized Set<String> removeAll(Collection<String> ids) throws IOException {
+		// Records stay in their month file until the month is rewritten, they just can't be found anymore
+		final Set<String> removed = new LinkedHashSet<>();
+		for (String id : ids) {
+			if (months.remove(id) != null) removed.add(id);
+		}
+		if (!removed.isEmpty()) writeIndex();
+		return removed;
+	}
+
+	private Map<String, byte[]> readMonth(YearMonth month) throws IOException {
+		final Map<String, byte[]> cached = openMonths.get(month);
+		if (cached != null) return cached;
+		final Path path = getPath(month);
+		final Map<String, byte[]> records = new HashMap<>();
+		if (Files.exists(path)) {
+			try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path))))) {
+				if (input.readInt() != MAGIC) throw new IOException("Invalid archive header in " + path);
+				if (input.readInt() != VERSION) throw new IOException("Unsupported archive version in " + path);
+				final int count = input.readInt();
+				for (int i = 0; i < count; i++) {
+					final String id = input.readUTF();
+					final byte[] record = new byte[input.readInt()];
+					input.readFully(record);
+					records.put(id, record);
+				}
+			}
+		}
+		openMonths.put(month, records);
+		if (openMonths.size() > OPEN_MONTHS) openMonths.remove(openMonths.keySet().iterator().next());
+		return records;
+	}
+
+	private void writeMonth(YearMonth month, Map<String, byte[]> records) throws IOException {
+		final Path path = getPath(month);
+		final Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temporaryPath))))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(records.size());
+			for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+				output.writeUTF(entry.getKey());
+				output.writeInt(entry.getValue().length);
+				output.write(entry.getValue());
+			}
+		}
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		openMonths.remove(month);
+	}
+
+	private void writeIndex() throws IOException {
+		final Path temporaryPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, YearMonth> entry : months.entrySet()) {
+				writer.write(entry.getValue() + "\t" + entry.getKey());
+				writer.newLine();
+			}
+		}
+		Files.move(temporaryPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private Path getPath(YearMonth month) {
+		return directory.resolve(month + ARCHIVE_FILE_TYPE);
+	}
+
+}
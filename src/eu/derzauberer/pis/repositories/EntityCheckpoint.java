@@ -0,0 +1,99 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.derzauberer.pis.configuration.SpringConfiguration;
+import eu.derzauberer.pis.model.Entity;
+
+public class EntityCheckpoint<T extends Entity<T>> {
+
+	private final Path path;
+	private final Class<T> type;
+
+	protected static final String CHECKPOINT_DIRECTORY = "data/checkpoints";
+	private static final String FILE_TYPE = ".bin";
+	private static final int MAGIC = 0x50495343;
+	private static final int VERSION = 1;
+	private static final long CLOCK_TOLERANCE = 2000;
+	private static final ObjectMapper OBJECT_MAPPER = SpringConfiguration.getBean(ObjectMapper.class);
+
+	public EntityCheckpoint(String name, Class<T> type) {
+		this.path = Paths.get(CHECKPOINT_DIRECTORY, name + FILE_TYPE);
+		this.type = type;
+	}
+
+	public static long createTimestamp() {
+		// File modification times can lag behind the system clock, so files written
+		// shortly before the checkpoint are treated as changed and replayed again
+		return System.currentTimeMillis() - CLOCK_TOLERANCE;
+	}
+
+	public boolean exists() {
+		return Files.exists(path);
+	}
+
+	public long getTimestamp() throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			return readHeader(input);
+		}
+	}
+
+	public List<byte[]> readRecords() throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			readHeader(input);
+			final int count = input.readInt();
+			final List<byte[]> records = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				final byte[] record = new byte[input.readInt()];
+				input.readFully(record);
+				records.add(record);
+			}
+			return records;
+		}
+	}
+
+	public T parse(byte[] record) throws IOException {
+		return OBJECT_MAPPER.readValue(record, type);
+	}
+
+	public void write(Collection<T> entities, long timestamp) throws IOException {
+		Files.createDirectories(path.getParent());
+		final Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeLong(timestamp);
+			output.writeInt(entities.size());
+			for (T entity : entities) {
+				final byte[] record = OBJECT_MAPPER.writeValueAsBytes(entity);
+				output.writeInt(record.length);
+				output.write(record);
+			}
+		}
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public void delete() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	private long readHeader(DataInputStream input) throws IOException {
+		if (input.readInt() != MAGIC) throw new IOException("Invalid checkpoint header in " + path);
+		if (input.readInt() != VERSION) throw new IOException("Unsupported checkpoint version in " + path);
+		return input.readLong();
+	}
+
+}
@@ -0,0 +1,157 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.derzauberer.pis.util.OrderStatisticTree;
+
+public class EntityIdIndex {
+
+	private final Callable<List<String>> idSource;
+	private final Callable<Long> lastModifiedSource;
+	private final Path indexPath;
+	private final Path journalPath;
+	private final OrderStatisticTree<String, String> ids = new OrderStatisticTree<>();
+	private BufferedWriter journal;
+	private int journalEntries;
+
+	private static final String INDEX_FILE_TYPE = ".ids";
+	private static final String JOURNAL_FILE_TYPE = ".journal";
+	private static final int MAX_JOURNAL_ENTRIES = 10000;
+	private static final Logger LOGGER = LoggerFactory.getLogger(EntityIdIndex.class);
+
+	public EntityIdIndex(Path directory, Callable<List<String>> idSource, Callable<Long> lastModifiedSource) {
+		this.idSource = idSource;
+		this.lastModifiedSource = lastModifiedSource;
+		this.indexPath = directory.resolveSibling(directory.getFileName() + INDEX_FILE_TYPE);
+		this.journalPath = directory.resolveSibling(directory.getFileName() + INDEX_FILE_TYPE + JOURNAL_FILE_TYPE);
+		try {
+			if (isUpToDate()) {
+				load();
+			} else {
+				rebuild();
+			}
+			journal = Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (IOException exception) {
+			throw new IllegalStateException("Couldn't open id index " + indexPath + ": " + exception.getMessage(), exception);
+		}
+	}
+
+	public synchronized boolean contains(String id) {
+		return ids.containsKey(id);
+	}
+
+	public synchronized void add(String id) {
+		if (ids.put(id, id) == null) appendJournal('+', id);
+	}
+
+	public synchronized void remove(String id) {
+		if (ids.remove(id) != null) appendJournal('-', id);
+	}
+
+	public synchronized int size() {
+		return ids.size();
+	}
+
+	public synchronized List<String> getAll() {
+		return ids.values();
+	}
+
+	public synchronized List<String> getRange(int beginn, int end) {
+		return ids.getRange(beginn, end);
+	}
+
+	public synchronized List<String> getRangeAfter(String id, int limit) {
+		return ids.getRangeAfter(id, limit);
+	}
+
+	public synchronized void close() {
+		try {
+			journal.close();
+			writeIndex();
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't write id index {}: {} {}", indexPath, exception.getClass().getSimpleName(), exception.getMessage());
+		}
+	}
+
+	private boolean isUpToDate() throws IOException {
+		if (!Files.exists(indexPath)) return false;
+		long indexModified = Files.getLastModifiedTime(indexPath).toMillis();
+		if (Files.exists(journalPath)) indexModified = Math.max(indexModified, Files.getLastModifiedTime(journalPath).toMillis());
+		try {
+			return lastModifiedSource.call() <= indexModified;
+		} catch (IOException exception) {
+			throw exception;
+		} catch (Exception exception) {
+			throw new IOException(exception.getMessage(), exception);
+		}
+	}
+
+	private void load() throws IOException {
+		for (String id : Files.readAllLines(indexPath, StandardCharsets.UTF_8)) {
+			if (!id.isEmpty()) ids.put(id, id);
+		}
+		if (Files.exists(journalPath)) {
+			for (String entry : Files.readAllLines(journalPath, StandardCharsets.UTF_8)) {
+				if (entry.length() < 2) continue;
+				final String id = entry.substring(1);
+				if (entry.charAt(0) == '+') ids.put(id, id);
+				else ids.remove(id);
+			}
+		}
+		writeIndex();
+	}
+
+	private void rebuild() throws IOException {
+		try {
+			for (String id : idSource.call()) {
+				ids.put(id, id);
+			}
+		} catch (IOException exception) {
+			throw exception;
+		} catch (Exception exception) {
+			throw new IOException(exception.getMessage(), exception);
+		}
+		writeIndex();
+		LOGGER.info("Rebuilt id index {} with {} entries", indexPath, ids.size());
+	}
+
+	private void writeIndex() throws IOException {
+		final Path temporaryPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+			for (String id : ids.values()) {
+				writer.write(id);
+				writer.newLine();
+			}
+		}
+		Files.move(temporaryPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.deleteIfExists(journalPath);
+		journalEntries = 0;
+	}
+
+	private void appendJournal(char operation, String id) {
+		try {
+			journal.write(operation + id);
+			journal.newLine();
+			journal.flush();
+			if (++journalEntries >= MAX_JOURNAL_ENTRIES) {
+				journal.close();
+				writeIndex();
+				journal = Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't update id index {}: {} {}", indexPath, exception.getClass().getSimpleName(), exception.getMessage());
+		}
+	}
+
+}
@@ -1,26 +1,56 @@
 package eu.derzauberer.pis.repositories;
 
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import eu.derzauberer.pis.configuration.SpringConfiguration;
+import eu.derzauberer.pis.dto.ImportResultDto;
 import eu.derzauberer.pis.model.Entity;
+import eu.derzauberer.pis.model.NameEntity;
 import eu.derzauberer.pis.util.ProgressStatus;
 
 public abstract class EntityRepository<T extends Entity<T>> {
@@ -28,20 +58,54 @@ public abstract class EntityRepository<T extends Entity<T>> {
 	private final String name;
 	private final Class<T> type;
 	private final Logger logger;
+	private final Path directory;
+	private final Path layoutPath;
+	private final FileCommitter committer;
+	private final ReadWriteLock layoutLock = new ReentrantReadWriteLock();
+	private volatile StorageLayout layout;
+	private volatile StorageLayout previousLayout;
+	private volatile int migratedFiles;
+	private final StorageCodec codec;
+	private volatile boolean recoding;
+	private final Map<String, SecondaryIndex<T, ?>> indexes = new ConcurrentHashMap<>();
 	
 	protected static final String DIRECTORY = "data/entities";
 	protected static final String FILE_TYPE = ".json";
-	private static final ObjectMapper OBJECT_MAPPER = SpringConfiguration.getBean(ObjectMapper.class);
+	private static final String LAYOUT_FILE_TYPE = ".layout";
+	protected static final ObjectMapper OBJECT_MAPPER = SpringConfiguration.getBean(ObjectMapper.class);
+	private static final int IMPORT_BATCH_SIZE = 500;
+	private static final int IMPORT_QUEUE_CAPACITY = 4;
+	private static final int MAX_IMPORT_ERRORS = 100;
+	private static final int PAGE_SIZE = 500;
+	private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+	private static final ForkJoinPool LOADER_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 	
 	public EntityRepository(String name, Class<T> type, Logger logger) {
 		this.name = name;
 		this.type = type;
 		this.logger = logger;
+		directory = Paths.get(DIRECTORY, name);
+		layoutPath = Paths.get(DIRECTORY, name + LAYOUT_FILE_TYPE);
 		try {
-			Files.createDirectories(Paths.get(DIRECTORY, name));
+			Files.createDirectories(directory);
 		} catch (IOException exception) {
 			logger.error("Couldn't create directory {}: {} {}", DIRECTORY + "/" + name, exception.getClass().getSimpleName(), exception.getMessage());
 		}
+		committer = new FileCommitter(directory, SpringConfiguration.syncPolicy);
+		codec = SpringConfiguration.storageCodecs.getOrDefault(name, SpringConfiguration.storageCodec);
+		loadLayout();
+	}
+	
+	protected EntityRepository(EntityRepository<T> repository, Logger logger) {
+		// Decorators share the storage of the repository they wrap instead of opening it a second time
+		this.name = repository.name;
+		this.type = repository.type;
+		this.logger = logger;
+		directory = repository.directory;
+		layoutPath = repository.layoutPath;
+		committer = repository.committer;
+		codec = repository.codec;
+		layout = repository.layout;
 	}
 	
 	public String getName() {
@@ -54,108 +118,553 @@ public abstract class EntityRepository<T extends Entity<T>> {
 	
 	public abstract void add(T entity);
 	
+	public void addAll(Collection<T> entities) {
+		for (T entity : entities) {
+			add(entity);
+		}
+	}
+	
 	public abstract boolean removeById(String id);
 	
+	public int removeAll(Collection<String> ids) {
+		int removed = 0;
+		for (String id : ids) {
+			if (removeById(id)) removed++;
+		}
+		return removed;
+	}
+	
 	public abstract boolean containsById(String id);
 	
+	/**
+	 * Returns the stored instance of the entity, which is shared with the
+	 * repository and its cache. It must be treated as read-only, changes
+	 * have to be made on {@link #getCopyById(String)} and saved with add.
+	 */
 	public abstract Optional<T> getById(String id);
 	
+	public Optional<T> getCopyById(String id) {
+		return getById(id).map(this::copy);
+	}
+	
+	public Optional<T> getArchivedById(String id) {
+		return Optional.empty();
+	}
+	
+	public void addOnArchive(Consumer<Collection<T>> action) {
+		// Only archiving repositories move entities out of the repository on their own
+	}
+	
 	public abstract List<T> getAll();
 	
 	public abstract List<T> getRange(int beginn, int end);
 	
+	public List<T> getRangeAfter(String id, int limit) {
+		Objects.requireNonNull(id);
+		return getAll().stream().filter(entity -> entity.getId().compareTo(id) > 0).sorted().limit(limit).toList();
+	}
+	
 	public abstract int size();
 	
 	public boolean isEmpty() {
 		return size() == 0;
 	}
 	
-	public String exportEntities() {
+	public List<String> getIdsModifiedSince(long timestamp) {
+		return listEntityFiles().entrySet().stream().filter(entry -> entry.getValue() >= timestamp).map(Map.Entry::getKey).sorted().toList();
+	}
+	
+	public StorageLayout getLayout() {
+		return layout;
+	}
+	
+	public Map<String, Object> getStatistics() {
+		final Map<String, Object> statistics = committer.getStatistics();
+		statistics.put("storageLayout", layout.getName());
+		statistics.put("storageCodec", codec.getName());
+		if (!indexes.isEmpty()) {
+			final Map<String, Object> indexStatistics = new LinkedHashMap<>();
+			indexes.values().forEach(index -> indexStatistics.put(index.getName(), Map.of("entities", index.size(), "keys", index.keyCount())));
+			statistics.put("indexes", indexStatistics);
+		}
+		final StorageLayout previous = previousLayout;
+		if (previous != null) {
+			statistics.put("migratingFrom", previous.getName());
+			statistics.put("migratedFiles", migratedFiles);
+		}
+		return statistics;
+	}
+	
+	public int migrateLayout(StorageLayout target) {
+		Objects.requireNonNull(target);
+		layoutLock.writeLock().lock();
 		try {
-			final Collection<T> entities = getAll();
-			final HashMap<String, Collection<T>> types = new HashMap<>();
-			types.put(name, entities);
-			String json = OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(types);
-			logger.info("Exported {} {}", entities.size(), name);
-			return json;
-		} catch (JsonProcessingException exception) {
-			logger.error("Couldn't package {}: {} {}",  name, exception.getClass().getSimpleName(), exception.getMessage());
-			return null;
+			if (previousLayout == null && layout == target) return 0;
+			if (previousLayout != null && layout != target) {
+				throw new IllegalStateException(name + " is already migrating to the " + layout.getName() + " layout!");
+			}
+			if (previousLayout == null) {
+				previousLayout = layout;
+				layout = target;
+				migratedFiles = 0;
+			}
+			saveLayout();
+		} finally {
+			layoutLock.writeLock().unlock();
+		}
+		logger.info("Migrating {} from the {} to the {} layout", name, previousLayout.getName(), layout.getName());
+		final ProgressStatus progress = new ProgressStatus("Migrating", name, size());
+		int failed = 0;
+		List<String> ids;
+		while (failed == 0 && !(ids = listIds(previousLayout)).isEmpty()) {
+			for (String id : ids) {
+				layoutLock.writeLock().lock();
+				try {
+					moveToLayout(id);
+					migratedFiles++;
+				} catch (IOException exception) {
+					failed++;
+					logger.warn("Couldn't migrate entity with id {} from {}: {} {}", id, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+				} finally {
+					layoutLock.writeLock().unlock();
+				}
+				progress.count();
+			}
+		}
+		if (failed > 0) {
+			logger.warn("Migration of {} stopped with {} failed files, reads still fall back to the {} layout", name, failed, previousLayout.getName());
+			return migratedFiles;
+		}
+		layoutLock.writeLock().lock();
+		try {
+			previousLayout = null;
+			saveLayout();
+		} finally {
+			layoutLock.writeLock().unlock();
+		}
+		logger.info("Migrated {} {} to the {} layout", migratedFiles, name, layout.getName());
+		return migratedFiles;
+	}
+	
+	public <K extends Comparable<? super K>> void registerIndex(String indexName, Class<K> keyType, Function<T, Collection<K>> keyFunction) {
+		Objects.requireNonNull(indexName);
+		final SecondaryIndex<T, K> index = new SecondaryIndex<>(name, indexName, keyType, keyFunction);
+		if (indexes.putIfAbsent(indexName, index) != null) {
+			throw new IllegalStateException("Index " + indexName + " is already registered on " + name + "!");
 		}
+		final long timestamp = EntityCheckpoint.createTimestamp();
+		if (!restoreIndex(index)) rebuildIndex(index);
+		saveIndex(index, timestamp);
+	}
+	
+	public <K extends Comparable<? super K>> List<String> findIdsByIndex(String indexName, K key) {
+		return this.<K>getIndex(indexName).get(key);
+	}
+	
+	public <K extends Comparable<? super K>> List<String> findIdsByIndexRange(String indexName, K from, K to) {
+		return this.<K>getIndex(indexName).getRange(from, to);
+	}
+	
+	public <K extends Comparable<? super K>> List<T> findByIndex(String indexName, K key) {
+		return findIdsByIndex(indexName, key).stream().map(this::getById).flatMap(Optional::stream).toList();
+	}
+	
+	public <K extends Comparable<? super K>> List<T> findByIndexRange(String indexName, K from, K to) {
+		return findIdsByIndexRange(indexName, from, to).stream().map(this::getById).flatMap(Optional::stream).toList();
+	}
+	
+	public StorageCodec getCodec() {
+		return codec;
+	}
+	
+	protected FileCommitter getCommitter() {
+		return committer;
 	}
 	
-	public void importEntities(String json) {
+	public int recodeEntities() {
+		final List<String> ids = listEntityIds();
+		final ProgressStatus progress = new ProgressStatus("Recoding", name, ids.size());
+		int recoded = 0;
+		// Setting the flag under the write lock waits for writes that still saw it unset
+		setRecoding(true);
 		try {
-			final ObjectNode jsonTypes = new ObjectMapper().readValue(json, ObjectNode.class);
-			final ArrayNode jsonEntities = (ArrayNode) jsonTypes.get(name);
-			int i = 0;
-			if (jsonEntities != null) {
-				for (JsonNode jsonEntity : jsonEntities) {
-					final T entity = OBJECT_MAPPER.readValue(jsonEntity.toString(), type);
-					add(entity);
-					i++;
+			for (String id : ids) {
+				// Writes and deletes lock while recoding, so a file is never replaced by an older version
+				layoutLock.writeLock().lock();
+				try {
+					final byte[] content = Files.readAllBytes(findPath(id));
+					final StorageCodec fileCodec = detectCodec(content);
+					if (fileCodec != codec) {
+						final T entity = fileCodec.decode(OBJECT_MAPPER, new ByteArrayInputStream(content), type);
+						committer.write(getPath(id), codec.encode(OBJECT_MAPPER, entity));
+						recoded++;
+					}
+				} catch (NoSuchFileException exception) {
+					// The entity was deleted in the meantime
+				} catch (IOException exception) {
+					logger.warn("Couldn't recode entity with id {} from {}: {} {}", id, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+				} finally {
+					layoutLock.writeLock().unlock();
 				}
+				progress.count();
+			}
+		} finally {
+			setRecoding(false);
+		}
+		logger.info("Recoded {} {} to the {} codec", recoded, name, codec.getName());
+		return recoded;
+	}
+	
+	public void close() {
+		final long timestamp = EntityCheckpoint.createTimestamp();
+		indexes.values().forEach(index -> saveIndex(index, timestamp));
+	}
+	
+	public int exportEntities(OutputStream output, boolean compact, boolean gzip) throws IOException {
+		final GZIPOutputStream gzipOutput = gzip ? new GZIPOutputStream(output, EXPORT_BUFFER_SIZE) : null;
+		final ObjectWriter writer = OBJECT_MAPPER.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		int count = 0;
+		final ObjectWriter documentWriter = compact ? OBJECT_MAPPER.writer() : OBJECT_MAPPER.writerWithDefaultPrettyPrinter();
+		try (JsonGenerator generator = documentWriter.createGenerator(gzip ? gzipOutput : output)) {
+			generator.writeStartObject();
+			generator.writeArrayFieldStart(name);
+			List<T> page = getRange(0, Math.min(size(), PAGE_SIZE));
+			while (!page.isEmpty()) {
+				for (T entity : page) {
+					writer.writeValue(generator, entity);
+				}
+				count += page.size();
+				page = getRangeAfter(page.get(page.size() - 1).getId(), PAGE_SIZE);
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+			generator.flush();
+			if (gzipOutput != null) gzipOutput.finish();
+		}
+		logger.info("Exported {} {}", count, name);
+		return count;
+	}
+	
+	public ImportResultDto importEntities(InputStream input) {
+		return importEntities(input, this::addAll);
+	}
+	
+	public ImportResultDto importEntities(InputStream input, Consumer<List<T>> consumer) {
+		final ImportResultDto result = new ImportResultDto();
+		final BlockingQueue<List<T>> batches = new ArrayBlockingQueue<>(IMPORT_QUEUE_CAPACITY);
+		final Thread writer = new Thread(() -> writeImportBatches(batches, consumer, result), "import-" + name);
+		writer.start();
+		try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(input)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) throw new IOException("Expected an object containing " + name);
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				final String field = parser.getCurrentName();
+				if (parser.nextToken() != JsonToken.START_ARRAY || !name.equals(field)) {
+					parser.skipChildren();
+					continue;
+				}
+				int index = 0;
+				List<TokenBuffer> records = new ArrayList<>(IMPORT_BATCH_SIZE);
+				JsonToken token;
+				while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+					if (token == null) throw new IOException("Unexpected end of input in " + name);
+					final TokenBuffer record = new TokenBuffer(parser);
+					record.copyCurrentStructure(parser);
+					records.add(record);
+					if (records.size() == IMPORT_BATCH_SIZE) {
+						sendImportBatch(batches, writer, bindImportBatch(records, index, result));
+						index += records.size();
+						records = new ArrayList<>(IMPORT_BATCH_SIZE);
+					}
+				}
+				if (!records.isEmpty()) sendImportBatch(batches, writer, bindImportBatch(records, index, result));
 			}
-			logger.info("Imported {} {}", i, name);
 		} catch (IOException exception) {
+			addImportError(result, "Couldn't read import: " + exception.getMessage());
 			logger.error("Couldn't extract {}: {} {}", name, exception.getClass().getSimpleName(), exception.getMessage());
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		} finally {
+			stopImportWriter(batches, writer);
 		}
+		logger.info("Imported {} {} ({} failed)", result.getImported(), name, result.getFailed());
+		return result;
 	}
 	
-	protected List<T> loadEntities() {
-		return loadEntities(false);
+	private void sendImportBatch(BlockingQueue<List<T>> batches, Thread writer, List<T> batch) throws IOException, InterruptedException {
+		// A writer that died would never take from the full queue again
+		while (!batches.offer(batch, 1, TimeUnit.SECONDS)) {
+			if (!writer.isAlive()) throw new IOException("Import writer stopped");
+		}
 	}
 	
-	protected List<T> loadEntities(boolean progress) {
+	private void stopImportWriter(BlockingQueue<List<T>> batches, Thread writer) {
+		final boolean interrupted = Thread.interrupted();
 		try {
-			final List<T> entities = new ArrayList<>();
-			final ProgressStatus progressStatus = new ProgressStatus(name, new File(DIRECTORY, getName()).list().length);
-			for (Path path : Files.list(Paths.get(DIRECTORY, name)).toList()) {
-				if (!Files.exists(path)) continue;
-				final String content = Files.readString(path);
-				final T entity = OBJECT_MAPPER.readValue(content, type);
-				entities.add(entity);
-				if (progress) progressStatus.count();
+			if (interrupted) {
+				batches.clear();
+				writer.interrupt();
+			} else {
+				sendImportBatch(batches, writer, List.of());
 			}
-			return entities;
+			writer.join();
 		} catch (IOException exception) {
-			logger.error("Couldn't load entities from {}: {} {}!", getName(), exception.getClass().getSimpleName(), exception.getMessage());
-			return new ArrayList<>();
+			// The writer already stopped, there is nothing left to wait for
+		} catch (InterruptedException exception) {
+			writer.interrupt();
+			Thread.currentThread().interrupt();
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+	
+	private List<T> bindImportBatch(List<TokenBuffer> records, int offset, ImportResultDto result) {
+		try {
+			return LOADER_POOL.submit(() -> IntStream.range(0, records.size()).parallel()
+					.mapToObj(i -> bindImportRecord(records.get(i), offset + i, result))
+					.filter(Objects::nonNull)
+					.toList()
+				).get();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			return List.of();
+		} catch (ExecutionException exception) {
+			addImportError(result, "Couldn't read records " + offset + " to " + (offset + records.size() - 1) + ": " + exception.getCause().getMessage());
+			return List.of();
 		}
 	}
 	
-	protected List<T> loadEntitiesInRange(int beginn, int end) {
+	private T bindImportRecord(TokenBuffer record, int index, ImportResultDto result) {
 		try {
-			final List<T> entities = new ArrayList<>();
-			for (Path path : Files.list(Paths.get(DIRECTORY, name)).toList().subList(beginn, end)) {
-				if (!Files.exists(path)) continue;
-				final String content = Files.readString(path);
-				final T entity = OBJECT_MAPPER.readValue(content, type);
-				entities.add(entity);
+			final T entity = OBJECT_MAPPER.readValue(record.asParser(), type);
+			if (entity.getId() == null || entity.getId().isEmpty()) {
+				addImportError(result, "Record " + index + ": Entity id must be not null and not empty!");
+				return null;
+			}
+			if (entity instanceof NameEntity && ((NameEntity) entity).getName() == null) {
+				addImportError(result, "Record " + index + " with id " + entity.getId() + ": Entity name must be not null!");
+				return null;
 			}
-			return entities;
+			return entity;
+		} catch (JsonProcessingException exception) {
+			addImportError(result, "Record " + index + ": " + exception.getOriginalMessage());
+			return null;
 		} catch (IOException exception) {
-			logger.error("Couldn't load entities from {}: {} {}!", getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			addImportError(result, "Record " + index + ": " + exception.getMessage());
+			return null;
+		}
+	}
+	
+	private void writeImportBatches(BlockingQueue<List<T>> batches, Consumer<List<T>> consumer, ImportResultDto result) {
+		try {
+			List<T> batch;
+			while (!(batch = batches.take()).isEmpty()) {
+				try {
+					consumer.accept(batch);
+					addImported(result, batch.size());
+				} catch (RuntimeException batchException) {
+					// The records of a failed batch are added one by one to find the ones that fail
+					for (T entity : batch) {
+						try {
+							consumer.accept(List.of(entity));
+							addImported(result, 1);
+						} catch (RuntimeException exception) {
+							addImportError(result, "Record with id " + entity.getId() + ": " + exception.getMessage());
+						}
+					}
+				}
+				logger.debug("Imported {} {} so far", result.getImported(), name);
+			}
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private static void addImported(ImportResultDto result, int count) {
+		synchronized (result) {
+			result.setImported(result.getImported() + count);
+		}
+	}
+	
+	private static void addImportError(ImportResultDto result, String error) {
+		synchronized (result) {
+			result.setFailed(result.getFailed() + 1);
+			if (result.getErrors().size() < MAX_IMPORT_ERRORS) result.getErrors().add(error);
+		}
+	}
+	
+	protected void indexEntity(T entity) {
+		if (indexes.isEmpty()) return;
+		for (SecondaryIndex<T, ?> index : indexes.values()) {
+			index.add(entity);
+		}
+	}
+	
+	protected void unindexEntity(String id) {
+		if (indexes.isEmpty()) return;
+		for (SecondaryIndex<T, ?> index : indexes.values()) {
+			index.remove(id);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <K extends Comparable<? super K>> SecondaryIndex<T, K> getIndex(String indexName) {
+		final SecondaryIndex<T, ?> index = indexes.get(indexName);
+		if (index == null) throw new IllegalArgumentException("No index " + indexName + " registered on " + name + "!");
+		return (SecondaryIndex<T, K>) index;
+	}
+	
+	private boolean restoreIndex(SecondaryIndex<T, ?> index) {
+		if (!index.exists()) return false;
+		try {
+			final long timestamp = index.load();
+			int removed = 0;
+			for (String id : index.getIds()) {
+				if (containsById(id)) continue;
+				index.remove(id);
+				removed++;
+			}
+			final List<String> changedIds = getIdsModifiedSince(timestamp);
+			for (String id : changedIds) {
+				getById(id).ifPresentOrElse(index::add, () -> index.remove(id));
+			}
+			logger.info("Loaded index {} of {} and updated {} changed and {} removed entities", index.getName(), name, changedIds.size(), removed);
+			return true;
+		} catch (IOException | RuntimeException exception) {
+			logger.warn("Couldn't load index {} of {}, rebuilding it: {} {}", index.getName(), name, exception.getClass().getSimpleName(), exception.getMessage());
+			index.clear();
+			return false;
+		}
+	}
+	
+	private void rebuildIndex(SecondaryIndex<T, ?> index) {
+		final ProgressStatus progress = new ProgressStatus("Indexing", name + " by " + index.getName(), size());
+		List<T> page = getRange(0, Math.min(size(), PAGE_SIZE));
+		while (!page.isEmpty()) {
+			for (T entity : page) {
+				index.add(entity);
+				progress.count();
+			}
+			page = getRangeAfter(page.get(page.size() - 1).getId(), PAGE_SIZE);
+		}
+		logger.info("Built index {} of {} with {} keys", index.getName(), name, index.keyCount());
+	}
+	
+	private void saveIndex(SecondaryIndex<T, ?> index, long timestamp) {
+		try {
+			index.save(timestamp);
+		} catch (IOException exception) {
+			logger.warn("Couldn't save index {} of {}: {} {}", index.getName(), name, exception.getClass().getSimpleName(), exception.getMessage());
+		}
+	}
+	
+	protected T copy(T entity) {
+		try {
+			final TokenBuffer buffer = new TokenBuffer(OBJECT_MAPPER, false);
+			OBJECT_MAPPER.writeValue(buffer, entity);
+			return OBJECT_MAPPER.readValue(buffer.asParser(), type);
+		} catch (IOException exception) {
+			throw new IllegalStateException("Couldn't copy entity with id " + entity.getId() + " from " + name + ": " + exception.getMessage(), exception);
+		}
+	}
+	
+	protected List<T> loadEntities() {
+		return loadEntities(false);
+	}
+	
+	protected List<T> loadEntities(boolean progress) {
+		return parseEntities(listEntityIds(), id -> readEntity(findPath(id)), progress);
+	}
+	
+	protected <S> List<T> parseEntities(List<S> sources, Function<S, T> parser, boolean progress) {
+		final ProgressStatus progressStatus = new ProgressStatus(name, sources.size());
+		try {
+			return LOADER_POOL.submit(() -> sources.parallelStream()
+					.map(source -> {
+						final T entity = parser.apply(source);
+						if (progress) progressStatus.count();
+						return entity;
+					})
+					.filter(Objects::nonNull)
+					.collect(Collectors.toCollection(ArrayList::new))
+				).get();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			return new ArrayList<>();
+		} catch (ExecutionException exception) {
+			logger.error("Couldn't load entities from {}: {} {}!", getName(), exception.getCause().getClass().getSimpleName(), exception.getCause().getMessage());
 			return new ArrayList<>();
 		}
 	}
 	
+	protected Map<String, Long> listEntityFiles() {
+		final Map<String, Long> files = new HashMap<>();
+		for (String id : listEntityIds()) {
+			try {
+				files.put(id, Files.getLastModifiedTime(findPath(id)).toMillis());
+			} catch (NoSuchFileException exception) {
+				continue;
+			} catch (IOException exception) {
+				logger.error("Couldn't list entity with id {} from {}: {} {}!", id, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			}
+		}
+		return files;
+	}
+	
+	protected List<String> listEntityIds() {
+		final Set<String> ids = new LinkedHashSet<>(listIds(layout));
+		final StorageLayout previous = previousLayout;
+		if (previous != null) ids.addAll(listIds(previous));
+		return new ArrayList<>(ids);
+	}
+	
+	protected long getLastModified() throws IOException {
+		long lastModified = layout.getLastModified(directory);
+		final StorageLayout previous = previousLayout;
+		if (previous != null) lastModified = Math.max(lastModified, previous.getLastModified(directory));
+		return lastModified;
+	}
+	
+	protected List<T> loadEntities(List<String> ids) {
+		final List<T> entities = new ArrayList<>();
+		for (String id : ids) {
+			loadEntity(id).ifPresent(entities::add);
+		}
+		return entities;
+	}
+	
+	protected boolean containsEntities() {
+		try (Stream<Path> paths = Files.list(Paths.get(DIRECTORY, name))) {
+			return paths.findAny().isPresent();
+		} catch (IOException exception) {
+			return false;
+		}
+	}
 	
 	protected boolean containsEntity(String id) {
-		final Path path = Paths.get(DIRECTORY, name, id + FILE_TYPE);
-		return Files.exists(path);
+		return Files.exists(findPath(id));
 	}
 	
 	protected Optional<T> loadEntity(String id) {
-		try {
-			final Path path = Paths.get(DIRECTORY, name, id + FILE_TYPE);
-			if (!Files.exists(path)) return Optional.empty();
-			final String content = Files.readString(path);
-			final T entity = OBJECT_MAPPER.readValue(content, type);
-			return Optional.of(entity);
+		final Path path = findPath(id);
+		if (!Files.exists(path)) return Optional.empty();
+		T entity = readEntity(path);
+		// The file may have been moved by a running layout migration in the meantime
+		if (entity == null && previousLayout != null) entity = readEntity(getPath(id));
+		return Optional.ofNullable(entity);
+	}
+	
+	private T readEntity(Path path) {
+		try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+			input.mark(1);
+			final int firstByte = input.read();
+			input.reset();
+			return StorageCodec.detect(firstByte).decode(OBJECT_MAPPER, input, type);
+		} catch (NoSuchFileException exception) {
+			return null;
 		} catch (IOException exception) {
+			final String fileName = path.getFileName().toString();
+			final String id = fileName.substring(0, fileName.length() - FILE_TYPE.length());
 			logger.error("Couldn't load entity with id {} from {}: {} {}!", id, getName(), exception.getClass().getSimpleName(), exception.getMessage());
-			return Optional.empty();
+			return null;
 		}
 	}
 	
@@ -164,21 +673,178 @@ public abstract class EntityRepository<T extends Entity<T>> {
 			throw new IllegalArgumentException("Entity id must be not null and not empty!");
 		}
 		try {
-			final Path path = Paths.get(DIRECTORY, name, entity.getId() + FILE_TYPE);
-			final String content = OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(entity);
-			Files.writeString(path, content);
+			final byte[] content = codec.encode(OBJECT_MAPPER, entity);
+			// The flags only change under the write lock, so they can't change while a plain write holds the read lock
+			layoutLock.readLock().lock();
+			try {
+				if (previousLayout == null && !recoding) {
+					committer.write(getPath(entity.getId()), content);
+					return;
+				}
+			} finally {
+				layoutLock.readLock().unlock();
+			}
+			layoutLock.writeLock().lock();
+			try {
+				committer.write(getPath(entity.getId()), content);
+				if (previousLayout != null) Files.deleteIfExists(previousLayout.resolve(directory, entity.getId(), FILE_TYPE));
+			} finally {
+				layoutLock.writeLock().unlock();
+			}
 		} catch (IOException exception) {
 			logger.warn("Couldn't save entity with id {} from {}: {} {}", entity.getId(), getName(), exception.getClass().getSimpleName(), exception.getMessage());
 		}
 	}
 	
+	protected void saveEntities(Collection<T> entities) {
+		layoutLock.readLock().lock();
+		try {
+			if (previousLayout == null && !recoding) {
+				final Map<Path, byte[]> contents = new LinkedHashMap<>();
+				for (T entity : entities) {
+					if (entity.getId() == null || entity.getId().isEmpty()) {
+						throw new IllegalArgumentException("Entity id must be not null and not empty!");
+					}
+					try {
+						contents.put(getPath(entity.getId()), codec.encode(OBJECT_MAPPER, entity));
+					} catch (IOException exception) {
+						logger.warn("Couldn't save entity with id {} from {}: {} {}", entity.getId(), getName(), exception.getClass().getSimpleName(), exception.getMessage());
+					}
+				}
+				logBatchFailures(committer.writeAll(contents), "save");
+				return;
+			}
+		} finally {
+			layoutLock.readLock().unlock();
+		}
+		entities.forEach(this::saveEntity);
+	}
+	
+	protected void deleteEntities(Collection<String> ids) {
+		layoutLock.readLock().lock();
+		try {
+			if (previousLayout == null && !recoding) {
+				final Map<Path, byte[]> contents = new LinkedHashMap<>();
+				for (String id : ids) {
+					contents.put(getPath(id), null);
+				}
+				logBatchFailures(committer.writeAll(contents), "delete");
+				return;
+			}
+		} finally {
+			layoutLock.readLock().unlock();
+		}
+		ids.forEach(this::deleteEnity);
+	}
+	
+	private void logBatchFailures(Map<Path, IOException> failures, String operation) {
+		failures.forEach((path, exception) -> {
+			final String fileName = path.getFileName().toString();
+			final String id = fileName.substring(0, fileName.length() - FILE_TYPE.length());
+			logger.warn("Couldn't {} entity with id {} from {}: {} {}", operation, id, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+		});
+	}
+	
 	protected boolean deleteEnity(String id) {
 		try {
-			return Files.deleteIfExists(Paths.get(DIRECTORY, name, id + FILE_TYPE));
+			layoutLock.readLock().lock();
+			try {
+				if (previousLayout == null && !recoding) return committer.delete(getPath(id));
+			} finally {
+				layoutLock.readLock().unlock();
+			}
+			layoutLock.writeLock().lock();
+			try {
+				final boolean deleted = committer.delete(getPath(id));
+				return (previousLayout != null && Files.deleteIfExists(previousLayout.resolve(directory, id, FILE_TYPE))) || deleted;
+			} finally {
+				layoutLock.writeLock().unlock();
+			}
 		} catch (IOException exception) {
 			logger.warn("Couldn't delete entity with id {} from {}: {} {}", id, getName(), exception.getClass().getSimpleName(), exception.getMessage());
 		}
 		return false;
 	}
 	
+	private void setRecoding(boolean recoding) {
+		layoutLock.writeLock().lock();
+		try {
+			this.recoding = recoding;
+		} finally {
+			layoutLock.writeLock().unlock();
+		}
+	}
+	
+	private static StorageCodec detectCodec(byte[] content) {
+		if (content.length > 0 && StorageCodec.DEFLATE.canDecode(content[0] & 0xFF)) return StorageCodec.DEFLATE;
+		// Pretty and compact JSON both start with a brace, but only pretty JSON spans several lines
+		for (byte character : content) {
+			if (character == '\n') return StorageCodec.PRETTY;
+		}
+		return StorageCodec.COMPACT;
+	}
+	
+	private Path getPath(String id) {
+		return layout.resolve(directory, id, FILE_TYPE);
+	}
+	
+	private Path findPath(String id) {
+		final Path path = getPath(id);
+		final StorageLayout previous = previousLayout;
+		if (previous == null || Files.exists(path)) return path;
+		final Path previousPath = previous.resolve(directory, id, FILE_TYPE);
+		return Files.exists(previousPath) ? previousPath : path;
+	}
+	
+	private List<String> listIds(StorageLayout layout) {
+		try {
+			return layout.listIds(directory, FILE_TYPE);
+		} catch (IOException exception) {
+			logger.error("Couldn't list entities from {}: {} {}!", getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			return new ArrayList<>();
+		}
+	}
+	
+	private void moveToLayout(String id) throws IOException {
+		final Path previousPath = previousLayout.resolve(directory, id, FILE_TYPE);
+		final Path path = getPath(id);
+		if (!Files.exists(previousPath)) return;
+		if (Files.exists(path)) {
+			Files.delete(previousPath);
+			return;
+		}
+		Files.createDirectories(path.getParent());
+		Files.move(previousPath, path, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private void loadLayout() {
+		try {
+			if (Files.exists(layoutPath)) {
+				final List<String> lines = Files.readAllLines(layoutPath, StandardCharsets.UTF_8);
+				layout = StorageLayout.of(lines.get(0).trim());
+				if (lines.size() > 1 && !lines.get(1).isBlank()) previousLayout = StorageLayout.of(lines.get(1).trim());
+			} else {
+				layout = containsEntities() ? StorageLayout.FLAT : SpringConfiguration.storageLayout;
+				saveLayout();
+			}
+		} catch (IOException | RuntimeException exception) {
+			logger.error("Couldn't read storage layout of {}, using flat layout: {} {}", name, exception.getClass().getSimpleName(), exception.getMessage());
+			layout = StorageLayout.FLAT;
+		}
+		if (previousLayout != null) {
+			logger.warn("Migration of {} from the {} to the {} layout is incomplete, run it again to finish", name, previousLayout.getName(), layout.getName());
+		} else if (layout != SpringConfiguration.storageLayout) {
+			logger.info("{} is stored in the {} layout, migrate it to use the {} layout", name, layout.getName(), SpringConfiguration.storageLayout.getName());
+		}
+	}
+	
+	private void saveLayout() {
+		try {
+			final String content = layout.getName() + (previousLayout != null ? "\n" + previousLayout.getName() : "") + "\n";
+			Files.writeString(layoutPath, content, StandardCharsets.UTF_8);
+		} catch (IOException exception) {
+			logger.error("Couldn't save storage layout of {}: {} {}", name, exception.getClass().getSimpleName(), exception.getMessage());
+		}
+	}
+	
 }
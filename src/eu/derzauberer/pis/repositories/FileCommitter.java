@@ -0,0 +1,280 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.derzauberer.pis.enums.SyncPolicy;
+
+public class FileCommitter {
+
+	private final Path temporaryDirectory;
+	private final SyncPolicy policy;
+	private final AtomicLong temporaryCounter = new AtomicLong();
+	private List<PendingWrite> pending = new ArrayList<>();
+	private boolean committing = false;
+	private long writes;
+	private long syncs;
+	private long batches;
+
+	private static final String TEMPORARY_FILE_TYPE = ".tmp";
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileCommitter.class);
+
+	public FileCommitter(Path directory, SyncPolicy policy) {
+		this.temporaryDirectory = directory.resolveSibling(directory.getFileName() + TEMPORARY_FILE_TYPE);
+		this.policy = policy;
+		try {
+			Files.createDirectories(temporaryDirectory);
+			try (DirectoryStream<Path> paths = Files.newDirectoryStream(temporaryDirectory)) {
+				for (Path path : paths) {
+					Files.deleteIfExists(path);
+				}
+			}
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't clean up temporary files in {}: {} {}", temporaryDirectory, exception.getClass().getSimpleName(), exception.getMessage());
+		}
+	}
+
+	public SyncPolicy getPolicy() {
+		return policy;
+	}
+
+	public void write(Path path, byte[] content) throws IOException {
+		final Path temporaryPath = writeTemporary(path, content, policy == SyncPolicy.PER_WRITE);
+		if (policy == SyncPolicy.BATCHED) {
+			final PendingWrite write = new PendingWrite(temporaryPath, path);
+			commit(List.of(write));
+			if (write.failure != null) throw write.failure;
+			return;
+		}
+		Files.createDirectories(path.getParent());
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		if (policy == SyncPolicy.PER_WRITE) syncDirectory(path.getParent());
+		countCommit(1, policy == SyncPolicy.PER_WRITE ? 2 : 0);
+	}
+
+	public boolean delete(Path path) throws IOException {
+		if (policy == SyncPolicy.BATCHED) {
+			final boolean existed = Files.exists(path);
+			final PendingWrite write = new PendingWrite(null, path);
+			commit(List.of(write));
+			if (write.failure != null) throw write.failure;
+			return existed;
+		}
+		final boolean deleted = Files.deleteIfExists(path);
+		if (deleted && policy == SyncPolicy.PER_WRITE) syncDirectory(path.getParent());
+		countCommit(1, deleted && policy == SyncPolicy.PER_WRITE ? 1 : 0);
+		return deleted;
+	}
+
+	public void sync(FileChannel channel) throws IOException {
+		// Appends to files that stay open are synced like writes, so they can share a group commit
+		if (policy == SyncPolicy.NONE) return;
+		if (policy == SyncPolicy.PER_WRITE) {
+			channel.force(false);
+			countCommit(1, 1);
+			return;
+		}
+		final PendingWrite write = new PendingWrite(channel);
+		commit(List.of(write));
+		if (write.failure != null) throw write.failure;
+	}
+
+	public Map<Path, IOException> writeAll(Map<Path, byte[]> contents) {
+		// A null content deletes the file, all changes are committed as one batch
+		final Map<Path, IOException> failures = new LinkedHashMap<>();
+		final List<PendingWrite> batch = new ArrayList<>(contents.size());
+		for (Map.Entry<Path, byte[]> entry : contents.entrySet()) {
+			try {
+				final Path temporaryPath = entry.getValue() != null ? writeTemporary(entry.getKey(), entry.getValue(), false) : null;
+				batch.add(new PendingWrite(temporaryPath, entry.getKey()));
+			} catch (IOException exception) {
+				failures.put(entry.getKey(), exception);
+			}
+		}
+		if (batch.isEmpty()) return failures;
+		try {
+			if (policy == SyncPolicy.BATCHED) {
+				commit(batch);
+			} else if (policy == SyncPolicy.PER_WRITE) {
+				commitBatch(batch, true);
+			} else {
+				commitBatch(batch, false);
+			}
+		} catch (IOException exception) {
+			for (PendingWrite write : batch) {
+				if (write.failure == null && !write.done) write.failure = exception;
+			}
+		}
+		for (PendingWrite write : batch) {
+			if (write.failure != null) failures.put(write.path, write.failure);
+		}
+		return failures;
+	}
+
+	public synchronized Map<String, Object> getStatistics() {
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("syncPolicy", policy.name());
+		statistics.put("committedWrites", writes);
+		statistics.put("fsyncs", syncs);
+		statistics.put("commitBatches", batches);
+		statistics.put("averageBatchSize", batches == 0 ? 0.0 : (double) writes / batches);
+		return statistics;
+	}
+
+	private Path writeTemporary(Path path, byte[] content, boolean sync) throws IOException {
+		final Path temporaryPath = temporaryDirectory.resolve(path.getFileName() + "." + temporaryCounter.incrementAndGet() + TEMPORARY_FILE_TYPE);
+		try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			final ByteBuffer buffer = ByteBuffer.wrap(content);
+			while (buffer.hasRemaining()) channel.write(buffer);
+			if (sync) channel.force(false);
+		} catch (IOException exception) {
+			Files.deleteIfExists(temporaryPath);
+			throw exception;
+		}
+		return temporaryPath;
+	}
+
+	private void commit(List<PendingWrite> writes) throws IOException {
+		final PendingWrite write = writes.get(writes.size() - 1);
+		synchronized (this) {
+			pending.addAll(writes);
+			while (committing && !write.done) {
+				try {
+					wait();
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for group commit", exception);
+				}
+			}
+			if (write.done) return;
+			committing = true;
+		}
+		// The first writer that finds no commit in progress becomes the leader and
+		// syncs everything queued up to now, including writes of threads waiting on it
+		List<PendingWrite> batch;
+		synchronized (this) {
+			batch = pending;
+			pending = new ArrayList<>();
+		}
+		try {
+			commitBatch(batch, true);
+		} finally {
+			synchronized (this) {
+				committing = false;
+				notifyAll();
+			}
+		}
+	}
+
+	private void commitBatch(List<PendingWrite> batch, boolean sync) {
+		int syncCount = 0;
+		final Set<FileChannel> channels = new HashSet<>();
+		for (PendingWrite write : batch) {
+			if (!sync || write.channel == null || !channels.add(write.channel)) continue;
+			try {
+				write.channel.force(false);
+				syncCount++;
+			} catch (IOException exception) {
+				for (PendingWrite other : batch) {
+					if (other.channel == write.channel) other.failure = exception;
+				}
+			}
+		}
+		for (PendingWrite write : batch) {
+			if (!sync || write.temporaryPath == null) continue;
+			try (FileChannel channel = FileChannel.open(write.temporaryPath, StandardOpenOption.WRITE)) {
+				channel.force(false);
+				syncCount++;
+			} catch (IOException exception) {
+				write.failure = exception;
+			}
+		}
+		for (PendingWrite write : batch) {
+			if (write.failure != null || write.path == null) continue;
+			try {
+				if (write.temporaryPath == null) {
+					Files.deleteIfExists(write.path);
+				} else {
+					Files.createDirectories(write.path.getParent());
+					Files.move(write.temporaryPath, write.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				}
+			} catch (IOException exception) {
+				write.failure = exception;
+			}
+		}
+		final Set<Path> directories = new HashSet<>();
+		for (PendingWrite write : batch) {
+			if (sync && write.path != null) directories.add(write.path.getParent());
+		}
+		for (Path directory : directories) {
+			try {
+				syncDirectory(directory);
+				syncCount++;
+			} catch (IOException exception) {
+				for (PendingWrite write : batch) {
+					if (write.failure == null && write.path != null && write.path.getParent().equals(directory)) write.failure = exception;
+				}
+			}
+		}
+		synchronized (this) {
+			for (PendingWrite write : batch) {
+				write.done = true;
+			}
+		}
+		countCommit(batch.size(), syncCount);
+	}
+
+	private void syncDirectory(Path directory) throws IOException {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (UnsupportedOperationException | AccessDeniedException exception) {
+			// Some platforms don't allow opening directories, the rename is still atomic there
+		}
+	}
+
+	private synchronized void countCommit(int writes, int syncs) {
+		this.writes += writes;
+		this.syncs += syncs;
+		batches++;
+	}
+
+	private static class PendingWrite {
+
+		private final Path temporaryPath;
+		private final Path path;
+		private final FileChannel channel;
+		private boolean done;
+		private IOException failure;
+
+		private PendingWrite(Path temporaryPath, Path path) {
+			this.temporaryPath = temporaryPath;
+			this.path = path;
+			this.channel = null;
+		}
+
+		private PendingWrite(FileChannel channel) {
+			this.temporaryPath = null;
+			this.path = null;
+			this.channel = channel;
+		}
+
+	}
+
+}
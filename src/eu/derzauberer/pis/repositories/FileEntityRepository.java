@@ -1,6 +1,7 @@
 package eu.derzauberer.pis.repositories;
 
-import java.io.File;
+import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -13,10 +14,13 @@ import eu.derzauberer.pis.model.Entity;
 
 public class FileEntityRepository<T extends Entity<T>> extends EntityRepository<T> {
 	
+	private final EntityIdIndex index;
+	
 	protected static final Logger LOGGER = LoggerFactory.getLogger(FileEntityRepository.class);
 
 	public FileEntityRepository(String name, Class<T> type) {
 		super(name, type, LOGGER);
+		index = new EntityIdIndex(Paths.get(DIRECTORY, name), this::listEntityIds, this::getLastModified);
 		LOGGER.info("Loaded {} {}", size(), name);
 	}
 
@@ -25,28 +29,61 @@ public class FileEntityRepository<T extends Entity<T>> extends EntityRepository<
 		Objects.requireNonNull(entity);
 		Objects.requireNonNull(entity.getId());
 		saveEntity(entity);
+		index.add(entity.getId());
+		indexEntity(entity);
 	}
 
+	@Override
+	public void addAll(Collection<T> entities) {
+		for (T entity : entities) {
+			Objects.requireNonNull(entity);
+			Objects.requireNonNull(entity.getId());
+		}
+		saveEntities(entities);
+		for (T entity : entities) {
+			index.add(entity.getId());
+			indexEntity(entity);
+		}
+	}
+	
 	@Override
 	public boolean removeById(String id) {
 		Objects.requireNonNull(id);
 		final boolean exists = containsById(id);
 		deleteEnity(id);
+		index.remove(id);
+		unindexEntity(id);
 		return exists;
 	}
 
+	@Override
+	public int removeAll(Collection<String> ids) {
+		final List<String> existing = ids.stream().filter(this::containsById).toList();
+		deleteEntities(ids);
+		for (String id : ids) {
+			index.remove(id);
+			unindexEntity(id);
+		}
+		return existing.size();
+	}
+	
 	@Override
 	public boolean containsById(String id) {
 		Objects.requireNonNull(id);
-		return containsEntity(id);
+		return index.contains(id);
 	}
 
 	@Override
 	public Optional<T> getById(String id) {
-		if (id == null) return Optional.empty();
+		if (id == null || !index.contains(id)) return Optional.empty();
 		return loadEntity(id);
 	}
 
+	@Override
+	public Optional<T> getCopyById(String id) {
+		return getById(id);
+	}
+
 	@Override
 	public List<T> getAll() {
 		return Collections.unmodifiableList(loadEntities());
@@ -54,12 +91,24 @@ public class FileEntityRepository<T extends Entity<T>> extends EntityRepository<
 	
 	@Override
 	public List<T> getRange(int beginn, int end) {
-		return Collections.unmodifiableList(loadEntitiesInRange(beginn, end));
+		return Collections.unmodifiableList(loadEntities(index.getRange(beginn, end)));
+	}
+	
+	@Override
+	public List<T> getRangeAfter(String id, int limit) {
+		Objects.requireNonNull(id);
+		return Collections.unmodifiableList(loadEntities(index.getRangeAfter(id, limit)));
 	}
 	
 	@Override
 	public int size() {
-		return new File(DIRECTORY, getName()).list().length;
+		return index.size();
+	}
+	
+	@Override
+	public void close() {
+		index.close();
+		super.close();
 	}
 
 }
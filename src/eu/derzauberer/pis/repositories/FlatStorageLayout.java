@@ -0,0 +1,40 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FlatStorageLayout implements StorageLayout {
+	
+	@Override
+	public String getName() {
+		return "flat";
+	}
+	
+	@Override
+	public Path resolve(Path directory, String id, String fileType) {
+		return directory.resolve(id + fileType);
+	}
+	
+	@Override
+	public List<String> listIds(Path directory, String fileType) throws IOException {
+		final List<String> ids = new ArrayList<>();
+		if (!Files.isDirectory(directory)) return ids;
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*" + fileType)) {
+			for (Path path : paths) {
+				final String fileName = path.getFileName().toString();
+				ids.add(fileName.substring(0, fileName.length() - fileType.length()));
+			}
+		}
+		return ids;
+	}
+	
+	@Override
+	public long getLastModified(Path directory) throws IOException {
+		return Files.isDirectory(directory) ? Files.getLastModifiedTime(directory).toMillis() : 0;
+	}
+
+}
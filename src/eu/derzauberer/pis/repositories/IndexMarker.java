@@ -0,0 +1,69 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+public class IndexMarker {
+
+	private final Path path;
+	private final int version;
+	private long timestamp;
+	private int count;
+
+	protected static final String CHECKPOINT_DIRECTORY = "data/checkpoints";
+	private static final String FILE_TYPE = ".marker";
+	private static final int MAGIC = 0x5049534D;
+
+	public IndexMarker(String name, int version) {
+		this.path = Paths.get(CHECKPOINT_DIRECTORY, name + FILE_TYPE);
+		this.version = version;
+	}
+
+	public boolean exists() {
+		return Files.exists(path);
+	}
+
+	public void read() throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (input.readInt() != MAGIC) throw new IOException("Invalid marker header in " + path);
+			final int markerVersion = input.readInt();
+			if (markerVersion != version) throw new IOException("Index version " + markerVersion + " in " + path + " is outdated, expected " + version);
+			timestamp = input.readLong();
+			count = input.readInt();
+		}
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public void write(long timestamp, int count) throws IOException {
+		Files.createDirectories(path.getParent());
+		final Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(version);
+			output.writeLong(timestamp);
+			output.writeInt(count);
+		}
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		this.timestamp = timestamp;
+		this.count = count;
+	}
+
+	public void delete() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+}
@@ -0,0 +1,38 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class JsonStorageCodec implements StorageCodec {
+	
+	private final String name;
+	private final boolean pretty;
+	
+	public JsonStorageCodec(String name, boolean pretty) {
+		this.name = name;
+		this.pretty = pretty;
+	}
+	
+	@Override
+	public String getName() {
+		return name;
+	}
+	
+	@Override
+	public byte[] encode(ObjectMapper mapper, Object entity) throws IOException {
+		return pretty ? mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(entity) : mapper.writeValueAsBytes(entity);
+	}
+	
+	@Override
+	public boolean canDecode(int firstByte) {
+		return firstByte == '{' || Character.isWhitespace(firstByte);
+	}
+	
+	@Override
+	public <T> T decode(ObjectMapper mapper, InputStream input, Class<T> type) throws IOException {
+		return mapper.readValue(input, type);
+	}
+
+}
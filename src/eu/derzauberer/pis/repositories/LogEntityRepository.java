@@ -0,0 +1,420 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.derzauberer.pis.model.Entity;
+import eu.derzauberer.pis.model.NameEntity;
+
+public class LogEntityRepository<T extends Entity<T>> extends EntityRepository<T> {
+
+	private final Path directory;
+	private final TreeMap<String, RecordPosition> positions = new TreeMap<>();
+	private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+	private final ScheduledExecutorService compactor;
+	private Segment activeSegment;
+
+	protected static final String LOG_DIRECTORY = "data/logs";
+	private static final String SEGMENT_FILE_TYPE = ".log";
+	private static final long SEGMENT_SIZE = 16 * 1024 * 1024;
+	private static final double COMPACTION_THRESHOLD = 0.5;
+	private static final long COMPACTION_INTERVAL = 60;
+	private static final byte DELETE = 0;
+	private static final byte PUT = 1;
+	private static final int CHECKSUM_SIZE = Integer.BYTES;
+	private static final int HEADER_SIZE = Integer.BYTES + CHECKSUM_SIZE + Byte.BYTES + Long.BYTES + Integer.BYTES;
+	protected static final Logger LOGGER = LoggerFactory.getLogger(LogEntityRepository.class);
+
+	public LogEntityRepository(String name, Class<T> type) {
+		super(name, type, LOGGER);
+		directory = Paths.get(LOG_DIRECTORY, name);
+		try {
+			Files.createDirectories(directory);
+			final List<Path> paths;
+			try (Stream<Path> files = Files.list(directory)) {
+				paths = files.filter(path -> path.toString().endsWith(SEGMENT_FILE_TYPE)).sorted().toList();
+			}
+			for (Path path : paths) {
+				final Segment segment = new Segment(path);
+				segments.put(segment.number, segment);
+				replaySegment(segment);
+			}
+			activeSegment = segments.isEmpty() ? createSegment(1) : segments.lastEntry().getValue();
+		} catch (IOException exception) {
+			throw new IllegalStateException("Couldn't open log of " + name + ": " + exception.getMessage(), exception);
+		}
+		if (positions.isEmpty() && containsEntities()) {
+			final List<T> entities = loadEntities(true);
+			addAll(entities);
+			LOGGER.info("Migrated {} {} into log", entities.size(), name);
+		}
+		compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "log-compactor-" + name);
+			thread.setDaemon(true);
+			return thread;
+		});
+		compactor.scheduleWithFixedDelay(this::compact, COMPACTION_INTERVAL, COMPACTION_INTERVAL, TimeUnit.SECONDS);
+		LOGGER.info("Loaded {} {} from {} segments", size(), name, segments.size());
+	}
+
+	@Override
+	public void add(T entity) {
+		addAll(List.of(entity));
+	}
+
+	@Override
+	public void addAll(Collection<T> entities) {
+		for (T entity : entities) {
+			Objects.requireNonNull(entity);
+			Objects.requireNonNull(entity.getId());
+			if (entity instanceof NameEntity) Objects.requireNonNull(((NameEntity) entity).getName());
+		}
+		final Set<Segment> written = new HashSet<>();
+		synchronized (this) {
+			for (T entity : entities) {
+				try {
+					written.add(append(PUT, entity.getId(), OBJECT_MAPPER.writeValueAsBytes(entity), System.currentTimeMillis()));
+					indexEntity(entity);
+				} catch (IOException exception) {
+					LOGGER.warn("Couldn't append entity with id {} to {}: {} {}", entity.getId(), getName(), exception.getClass().getSimpleName(), exception.getMessage());
+				}
+			}
+		}
+		// Segments are synced outside of the lock, so appends of other threads can join the group commit
+		for (Segment segment : written) {
+			try {
+				sync(segment);
+			} catch (IOException exception) {
+				LOGGER.warn("Couldn't sync segment {} of {}: {} {}", segment.path, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public boolean removeById(String id) {
+		Objects.requireNonNull(id);
+		return removeAll(List.of(id)) > 0;
+	}
+
+	@Override
+	public int removeAll(Collection<String> ids) {
+		final Map<Segment, Integer> written = new HashMap<>();
+		synchronized (this) {
+			for (String id : ids) {
+				if (!positions.containsKey(id)) continue;
+				try {
+					written.merge(append(DELETE, id, new byte[0], System.currentTimeMillis()), 1, Integer::sum);
+					unindexEntity(id);
+				} catch (IOException exception) {
+					LOGGER.warn("Couldn't append deletion of entity with id {} to {}: {} {}", id, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+				}
+			}
+		}
+		int removed = 0;
+		for (Map.Entry<Segment, Integer> entry : written.entrySet()) {
+			try {
+				sync(entry.getKey());
+				removed += entry.getValue();
+			} catch (IOException exception) {
+				LOGGER.warn("Couldn't sync deletions in segment {} of {}: {} {}", entry.getKey().path, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			}
+		}
+		return removed;
+	}
+
+	@Override
+	public synchronized boolean containsById(String id) {
+		Objects.requireNonNull(id);
+		return positions.containsKey(id);
+	}
+
+	@Override
+	public synchronized Optional<T> getById(String id) {
+		if (id == null) return Optional.empty();
+		final RecordPosition position = positions.get(id);
+		if (position == null) return Optional.empty();
+		return Optional.ofNullable(readEntity(position));
+	}
+
+	@Override
+	public Optional<T> getCopyById(String id) {
+		return getById(id);
+	}
+
+	@Override
+	public synchronized List<T> getAll() {
+		final List<T> entities = new ArrayList<>();
+		for (RecordPosition position : positions.values()) {
+			final T entity = readEntity(position);
+			if (entity != null) entities.add(entity);
+		}
+		return Collections.unmodifiableList(entities);
+	}
+
+	@Override
+	public synchronized List<T> getRange(int beginn, int end) {
+		final List<T> entities = new ArrayList<>();
+		positions.values().stream().skip(beginn).limit(end - beginn).forEach(position -> {
+			final T entity = readEntity(position);
+			if (entity != null) entities.add(entity);
+		});
+		return Collections.unmodifiableList(entities);
+	}
+
+	@Override
+	public synchronized List<T> getRangeAfter(String id, int limit) {
+		Objects.requireNonNull(id);
+		final List<T> entities = new ArrayList<>();
+		positions.tailMap(id, false).values().stream().limit(limit).forEach(position -> {
+			final T entity = readEntity(position);
+			if (entity != null) entities.add(entity);
+		});
+		return Collections.unmodifiableList(entities);
+	}
+
+	@Override
+	public synchronized int size() {
+		return positions.size();
+	}
+
+	@Override
+	public synchronized List<String> getIdsModifiedSince(long timestamp) {
+		final List<String> ids = new ArrayList<>();
+		positions.forEach((id, position) -> {
+			if (position.timestamp >= timestamp) ids.add(id);
+		});
+		return ids;
+	}
+
+	@Override
+	public void close() {
+		compactor.shutdownNow();
+		synchronized (this) {
+			for (Segment segment : segments.values()) {
+				try {
+					segment.channel.force(true);
+					segment.channel.close();
+				} catch (IOException exception) {
+					LOGGER.warn("Couldn't close segment {} of {}: {} {}", segment.path, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+				}
+			}
+		}
+		super.close();
+	}
+
+	public synchronized void compact() {
+		final List<Segment> candidates = segments.values().stream()
+				.filter(segment -> segment != activeSegment)
+				.filter(segment -> segment.size == 0 || (double) segment.liveBytes / segment.size < COMPACTION_THRESHOLD)
+				.toList();
+		for (Segment segment : candidates) {
+			try {
+				final boolean oldest = segments.firstKey() == segment.number;
+				final Set<Segment> written = new HashSet<>();
+				int moved = 0;
+				for (Record record : readRecords(segment)) {
+					final RecordPosition position = positions.get(record.id);
+					if (record.operation == PUT && position != null && position.segment == segment.number && position.offset == record.offset) {
+						written.add(append(PUT, record.id, record.data, record.timestamp));
+						moved++;
+					} else if (record.operation == DELETE && !oldest && position == null) {
+						written.add(append(DELETE, record.id, record.data, record.timestamp));
+					}
+				}
+				// Moved records have to be durable before the segment holding the original is deleted
+				for (Segment target : written) {
+					target.channel.force(false);
+				}
+				segments.remove(segment.number);
+				segment.channel.close();
+				Files.deleteIfExists(segment.path);
+				LOGGER.info("Compacted segment {} of {} and moved {} records", segment.number, getName(), moved);
+			} catch (IOException exception) {
+				LOGGER.warn("Couldn't compact segment {} of {}: {} {}", segment.path, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			}
+		}
+	}
+
+	private Segment append(byte operation, String id, byte[] data, long timestamp) throws IOException {
+		final byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+		final int length = HEADER_SIZE + idBytes.length + data.length;
+		if (activeSegment.size > 0 && activeSegment.size + length > SEGMENT_SIZE) {
+			activeSegment = createSegment(activeSegment.number + 1);
+		}
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.putInt(length - Integer.BYTES).putInt(0).put(operation).putLong(timestamp).putInt(idBytes.length).put(idBytes).put(data);
+		buffer.putInt(Integer.BYTES, getChecksum(buffer)).flip();
+		final long offset = activeSegment.size;
+		while (buffer.hasRemaining()) {
+			activeSegment.channel.write(buffer, offset + buffer.position());
+		}
+		activeSegment.size += length;
+		apply(operation, id, new RecordPosition(activeSegment.number, offset, length, timestamp));
+		return activeSegment;
+	}
+
+	private void sync(Segment segment) throws IOException {
+		try {
+			getCommitter().sync(segment.channel);
+		} catch (ClosedChannelException exception) {
+			// The segment was compacted in the meantime and compaction syncs the records it moves
+		}
+	}
+
+	private void apply(byte operation, String id, RecordPosition position) {
+		final RecordPosition previous = operation == PUT ? positions.put(id, position) : positions.remove(id);
+		if (previous != null && segments.containsKey(previous.segment)) {
+			segments.get(previous.segment).liveBytes -= previous.length;
+		}
+		if (operation == PUT) segments.get(position.segment).liveBytes += position.length;
+	}
+
+	private void replaySegment(Segment segment) throws IOException {
+		final List<Record> records = readRecords(segment);
+		for (Record record : records) {
+			apply(record.operation, record.id, new RecordPosition(segment.number, record.offset, record.length, record.timestamp));
+		}
+		final long validSize = records.isEmpty() ? 0 : records.get(records.size() - 1).offset + records.get(records.size() - 1).length;
+		if (validSize < segment.size) {
+			LOGGER.warn("Truncating {} bytes of incomplete records from segment {} of {}", segment.size - validSize, segment.number, getName());
+			segment.channel.truncate(validSize);
+			segment.size = validSize;
+		}
+	}
+
+	private List<Record> readRecords(Segment segment) throws IOException {
+		final List<Record> records = new ArrayList<>();
+		final ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+		long offset = 0;
+		while (offset + HEADER_SIZE <= segment.size) {
+			lengthBuffer.clear();
+			readFully(segment.channel, lengthBuffer, offset);
+			final int length = lengthBuffer.flip().getInt() + Integer.BYTES;
+			if (length < HEADER_SIZE || offset + length > segment.size) break;
+			final ByteBuffer buffer = ByteBuffer.allocate(length);
+			readFully(segment.channel, buffer, offset);
+			// A record torn by a crash fails its checksum, so replay stops before it
+			if (buffer.flip().getInt(Integer.BYTES) != getChecksum(buffer)) break;
+			records.add(new Record(buffer, offset));
+			offset += length;
+		}
+		return records;
+	}
+
+	private T readEntity(RecordPosition position) {
+		final Segment segment = segments.get(position.segment);
+		try {
+			final ByteBuffer buffer = ByteBuffer.allocate(position.length);
+			readFully(segment.channel, buffer, position.offset);
+			if (buffer.flip().getInt(Integer.BYTES) != getChecksum(buffer)) throw new IOException("Checksum mismatch");
+			final Record record = new Record(buffer, position.offset);
+			return OBJECT_MAPPER.readValue(record.data, getType());
+		} catch (IOException exception) {
+			LOGGER.error("Couldn't read entity at {}:{} from {}: {} {}!", position.segment, position.offset, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			return null;
+		}
+	}
+
+	private Segment createSegment(int number) throws IOException {
+		final Segment segment = new Segment(directory.resolve(String.format("%08d", number) + SEGMENT_FILE_TYPE));
+		segments.put(segment.number, segment);
+		return segment;
+	}
+
+	private static int getChecksum(ByteBuffer buffer) {
+		final CRC32 checksum = new CRC32();
+		checksum.update(buffer.duplicate().position(Integer.BYTES + CHECKSUM_SIZE));
+		return (int) checksum.getValue();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) throw new IOException("Unexpected end of segment");
+		}
+	}
+
+	private static class Segment {
+
+		private final int number;
+		private final Path path;
+		private final FileChannel channel;
+		private long size;
+		private long liveBytes;
+
+		private Segment(Path path) throws IOException {
+			final String fileName = path.getFileName().toString();
+			this.number = Integer.parseInt(fileName.substring(0, fileName.length() - SEGMENT_FILE_TYPE.length()));
+			this.path = path;
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.size = channel.size();
+		}
+
+	}
+
+	private static class RecordPosition {
+
+		private final int segment;
+		private final long offset;
+		private final int length;
+		private final long timestamp;
+
+		private RecordPosition(int segment, long offset, int length, long timestamp) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.timestamp = timestamp;
+		}
+
+	}
+
+	private static class Record {
+
+		private final long offset;
+		private final int length;
+		private final byte operation;
+		private final long timestamp;
+		private final String id;
+		private final byte[] data;
+
+		private Record(ByteBuffer buffer, long offset) {
+			this.offset = offset;
+			this.length = buffer.getInt() + Integer.BYTES;
+			buffer.getInt();
+			this.operation = buffer.get();
+			this.timestamp = buffer.getLong();
+			final byte[] idBytes = new byte[buffer.getInt()];
+			buffer.get(idBytes);
+			this.id = new String(idBytes, StandardCharsets.UTF_8);
+			this.data = new byte[buffer.remaining()];
+			buffer.get(data);
+		}
+
+	}
+
+}
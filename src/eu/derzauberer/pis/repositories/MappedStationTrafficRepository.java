@@ -0,0 +1,274 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.derzauberer.pis.configuration.SpringConfiguration;
+import eu.derzauberer.pis.model.StationTraffic;
+import eu.derzauberer.pis.model.StationTrafficEntry;
+
+public class MappedStationTrafficRepository extends EntityRepository<StationTraffic> {
+
+	private final Path directory;
+	private final Path dictionaryPath;
+	private final EntityIdIndex index;
+	private final FileCommitter committer;
+	private final Map<String, Integer> lineIndices = new HashMap<>();
+	private volatile String[] lineIds = new String[0];
+
+	protected static final String TRAFFIC_DIRECTORY = "data/traffic";
+	private static final String BINARY_FILE_TYPE = ".bin";
+	private static final String DICTIONARY_FILE_TYPE = ".lines";
+	private static final int MAGIC = 0x50495354;
+	private static final int HEADER_SIZE = 3 * Integer.BYTES;
+	private static final int RECORD_SIZE = Short.BYTES + Integer.BYTES + Short.BYTES + Short.BYTES + Byte.BYTES + Byte.BYTES;
+	private static final byte LAST_STATION = 1;
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+	protected static final Logger LOGGER = LoggerFactory.getLogger(MappedStationTrafficRepository.class);
+
+	public MappedStationTrafficRepository(String name) {
+		super(name, StationTraffic.class, LOGGER);
+		directory = Paths.get(TRAFFIC_DIRECTORY, name);
+		dictionaryPath = Paths.get(TRAFFIC_DIRECTORY, name + DICTIONARY_FILE_TYPE);
+		try {
+			Files.createDirectories(directory);
+			if (Files.exists(dictionaryPath)) {
+				final List<String> dictionary = new ArrayList<>();
+				for (String lineId : Files.readAllLines(dictionaryPath, StandardCharsets.UTF_8)) {
+					if (lineId.isEmpty()) continue;
+					lineIndices.put(lineId, dictionary.size());
+					dictionary.add(lineId);
+				}
+				lineIds = dictionary.toArray(String[]::new);
+			}
+			index = new EntityIdIndex(directory, () -> StorageLayout.FLAT.listIds(directory, BINARY_FILE_TYPE), () -> StorageLayout.FLAT.getLastModified(directory));
+			// Blocks are replaced by renaming a new file over them, so readers keep their mapping of the old one
+			committer = new FileCommitter(directory, SpringConfiguration.syncPolicy);
+		} catch (IOException exception) {
+			throw new IllegalStateException("Couldn't open traffic store of " + name + ": " + exception.getMessage(), exception);
+		}
+		if (size() == 0 && containsEntities()) {
+			final List<StationTraffic> entities = loadEntities(true);
+			addAll(entities);
+			LOGGER.info("Migrated {} {} into binary traffic store", entities.size(), name);
+		}
+		LOGGER.info("Loaded {} {}", size(), name);
+	}
+
+	@Override
+	public void add(StationTraffic traffic) {
+		addAll(List.of(traffic));
+	}
+
+	@Override
+	public void addAll(Collection<StationTraffic> entities) {
+		for (StationTraffic traffic : entities) {
+			Objects.requireNonNull(traffic);
+			Objects.requireNonNull(traffic.getId());
+		}
+		final Map<String, Integer> indices;
+		try {
+			indices = getLineIndices(entities);
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't save line ids of {} {}: {} {}", entities.size(), getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			return;
+		}
+		final Map<Path, byte[]> contents = new LinkedHashMap<>();
+		for (StationTraffic traffic : entities) {
+			contents.put(getPath(traffic.getId()), encode(traffic, indices));
+		}
+		final Map<Path, IOException> failures = committer.writeAll(contents);
+		for (StationTraffic traffic : entities) {
+			final IOException exception = failures.get(getPath(traffic.getId()));
+			if (exception != null) {
+				LOGGER.warn("Couldn't save entity with id {} from {}: {} {}", traffic.getId(), getName(), exception.getClass().getSimpleName(), exception.getMessage());
+				continue;
+			}
+			index.add(traffic.getId());
+			indexEntity(traffic);
+		}
+	}
+
+	@Override
+	public boolean removeById(String id) {
+		Objects.requireNonNull(id);
+		try {
+			index.remove(id);
+			unindexEntity(id);
+			return committer.delete(getPath(id));
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't delete entity with id {} from {}: {} {}", id, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			return false;
+		}
+	}
+
+	@Override
+	public boolean containsById(String id) {
+		Objects.requireNonNull(id);
+		return index.contains(id);
+	}
+
+	@Override
+	public Optional<StationTraffic> getById(String id) {
+		if (id == null || !index.contains(id)) return Optional.empty();
+		return Optional.ofNullable(readTraffic(id));
+	}
+
+	@Override
+	public Optional<StationTraffic> getCopyById(String id) {
+		return getById(id);
+	}
+
+	@Override
+	public List<StationTraffic> getAll() {
+		return Collections.unmodifiableList(index.getAll().stream().map(this::readTraffic).filter(Objects::nonNull).toList());
+	}
+
+	@Override
+	public List<StationTraffic> getRange(int beginn, int end) {
+		return Collections.unmodifiableList(index.getRange(beginn, end).stream().map(this::readTraffic).filter(Objects::nonNull).toList());
+	}
+
+	@Override
+	public List<StationTraffic> getRangeAfter(String id, int limit) {
+		Objects.requireNonNull(id);
+		return Collections.unmodifiableList(index.getRangeAfter(id, limit).stream().map(this::readTraffic).filter(Objects::nonNull).toList());
+	}
+
+	@Override
+	public int size() {
+		return index.size();
+	}
+
+	@Override
+	public List<String> getIdsModifiedSince(long timestamp) {
+		return index.getAll().stream().filter(id -> {
+			try {
+				return Files.getLastModifiedTime(getPath(id)).toMillis() >= timestamp;
+			} catch (IOException exception) {
+				return true;
+			}
+		}).toList();
+	}
+
+	@Override
+	public Map<String, Object> getStatistics() {
+		final Map<String, Object> statistics = super.getStatistics();
+		statistics.putAll(committer.getStatistics());
+		return statistics;
+	}
+
+	@Override
+	public void close() {
+		index.close();
+		super.close();
+	}
+
+	private StationTraffic readTraffic(String id) {
+		try {
+			final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(getPath(id)));
+			if (buffer.getInt() != MAGIC) throw new IOException("Invalid traffic block header");
+			final int departures = buffer.getInt();
+			final int arrivals = buffer.getInt();
+			// Line ids are only ever appended, so one snapshot resolves every record of the block
+			final String[] lineIds = this.lineIds;
+			final int separator = id.lastIndexOf('_');
+			final StationTraffic traffic = new StationTraffic(id.substring(0, separator), LocalDate.parse(id.substring(separator + 1), DATE_FORMAT));
+			for (int i = 0; i < departures; i++) traffic.addDeparture(readRecord(buffer, lineIds));
+			for (int i = 0; i < arrivals; i++) traffic.addArrival(readRecord(buffer, lineIds));
+			return traffic;
+		} catch (IOException | RuntimeException exception) {
+			LOGGER.error("Couldn't load entity with id {} from {}: {} {}!", id, getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			return null;
+		}
+	}
+
+	private byte[] encode(StationTraffic traffic, Map<String, Integer> indices) {
+		final Collection<StationTrafficEntry> departures = traffic.getDepartures();
+		final Collection<StationTrafficEntry> arrivals = traffic.getArrivals();
+		final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (departures.size() + arrivals.size()) * RECORD_SIZE);
+		buffer.putInt(MAGIC).putInt(departures.size()).putInt(arrivals.size());
+		for (StationTrafficEntry entry : departures) writeRecord(buffer, entry, indices);
+		for (StationTrafficEntry entry : arrivals) writeRecord(buffer, entry, indices);
+		return buffer.array();
+	}
+
+	private void writeRecord(ByteBuffer buffer, StationTrafficEntry entry, Map<String, Integer> indices) {
+		buffer.putShort((short) (entry.getTime().getHour() * 60 + entry.getTime().getMinute()));
+		buffer.putInt(indices.get(entry.getLineId()));
+		buffer.putShort((short) entry.getStationPosition());
+		buffer.putShort((short) entry.getPlatform());
+		buffer.put(entry.isLastStation() ? LAST_STATION : 0);
+		buffer.put((byte) 0);
+	}
+
+	private StationTrafficEntry readRecord(ByteBuffer record, String[] lineIds) {
+		final int minute = record.getShort();
+		final String lineId = lineIds[record.getInt()];
+		final int position = record.getShort();
+		final int platform = record.getShort();
+		final boolean lastStation = (record.get() & LAST_STATION) != 0;
+		record.get();
+		return new StationTrafficEntry(LocalTime.of(minute / 60, minute % 60), lineId, position, platform, null, lastStation);
+	}
+
+	private synchronized Map<String, Integer> getLineIndices(Collection<StationTraffic> entities) throws IOException {
+		final Map<String, Integer> indices = new HashMap<>();
+		final List<String> newLineIds = new ArrayList<>();
+		for (StationTraffic traffic : entities) {
+			for (List<StationTrafficEntry> entries : List.of(traffic.getDepartures(), traffic.getArrivals())) {
+				for (StationTrafficEntry entry : entries) {
+					indices.computeIfAbsent(entry.getLineId(), lineId -> {
+						final Integer index = lineIndices.get(lineId);
+						if (index != null) return index;
+						newLineIds.add(lineId);
+						return lineIds.length + newLineIds.size() - 1;
+					});
+				}
+			}
+		}
+		if (newLineIds.isEmpty()) return indices;
+		// New line ids are appended in one write and synced before any block can refer to them
+		final StringBuilder dictionary = new StringBuilder();
+		newLineIds.forEach(lineId -> dictionary.append(lineId).append('\n'));
+		try (FileChannel channel = FileChannel.open(dictionaryPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			final ByteBuffer buffer = ByteBuffer.wrap(dictionary.toString().getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) channel.write(buffer);
+			committer.sync(channel);
+		}
+		final String[] extendedLineIds = Arrays.copyOf(lineIds, lineIds.length + newLineIds.size());
+		for (String lineId : newLineIds) {
+			lineIndices.put(lineId, indices.get(lineId));
+			extendedLineIds[indices.get(lineId)] = lineId;
+		}
+		lineIds = extendedLineIds;
+		return indices;
+	}
+
+	private Path getPath(String id) {
+		return directory.resolve(id + BINARY_FILE_TYPE);
+	}
+
+}
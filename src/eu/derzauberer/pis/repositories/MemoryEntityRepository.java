@@ -1,55 +1,140 @@
 package eu.derzauberer.pis.repositories;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
-import org.modelmapper.ModelMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import eu.derzauberer.pis.configuration.SpringConfiguration;
 import eu.derzauberer.pis.model.Entity;
 import eu.derzauberer.pis.model.NameEntity;
+import eu.derzauberer.pis.util.OrderStatisticTree;
 
 public class MemoryEntityRepository<T extends Entity<T>> extends EntityRepository<T>{
 	
-	private final Map<String, T> entities = new TreeMap<>();
+	private final OrderStatisticTree<String, T> entities = new OrderStatisticTree<>();
+	private final WriteBehindQueue<T> writeQueue;
+	private final EntityCheckpoint<T> checkpoint;
+	private final ScheduledExecutorService checkpointer;
+	private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
 	
-	private static final ModelMapper MODEL_MAPPER = SpringConfiguration.getBean(ModelMapper.class);
+	private static final int LOCK_STRIPES = 64;
+	private static final int WRITE_QUEUE_CAPACITY = 10000;
+	private static final int WRITE_BATCH_SIZE = 500;
 	protected static final Logger LOGGER = LoggerFactory.getLogger(MemoryEntityRepository.class);
 
 	public MemoryEntityRepository(String name, Class<T> type) {
+		this(name, type, 0, -1);
+	}
+	
+	public MemoryEntityRepository(String name, Class<T> type, long writeBehindStaleness, long checkpointInterval) {
 		super(name, type, LOGGER);
-		final List<T> entities = loadEntities(true);
-		for (T entity : entities) {
-			this.entities.put(entity.getId(), entity);
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new ReentrantLock();
+		}
+		writeQueue = writeBehindStaleness > 0 ? new WriteBehindQueue<>(name, this::saveEntity, this::deleteEnity, WRITE_QUEUE_CAPACITY, WRITE_BATCH_SIZE, writeBehindStaleness) : null;
+		checkpoint = checkpointInterval >= 0 ? new EntityCheckpoint<>(name, type) : null;
+		if (checkpoint == null || !restoreCheckpoint()) {
+			final List<T> entities = loadEntities(true);
+			for (T entity : entities) {
+				this.entities.put(entity.getId(), entity);
+			}
+			LOGGER.info("Loaded {} {}", size(), name);
+		}
+		if (checkpointInterval > 0) {
+			checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, "checkpoint-" + name);
+				thread.setDaemon(true);
+				return thread;
+			});
+			checkpointer.scheduleWithFixedDelay(this::writeCheckpoint, checkpointInterval, checkpointInterval, TimeUnit.SECONDS);
+		} else {
+			checkpointer = null;
 		}
-		LOGGER.info("Loaded {} {}", size(), name);
 	}
 	
-	@SuppressWarnings("unchecked")
 	@Override
 	public void add(T entity) {
 		Objects.requireNonNull(entity);
 		Objects.requireNonNull(entity.getId());
 		if (entity instanceof NameEntity) Objects.requireNonNull(((NameEntity) entity).getName());
-		final T copy = (T) MODEL_MAPPER.map(entity, entity.getClass());
-		entities.put(entity.getId(), copy);
-		saveEntity(copy);
+		final T copy = copy(entity);
+		final ReentrantLock lock = getLock(entity.getId());
+		lock.lock();
+		try {
+			entities.put(entity.getId(), copy);
+			indexEntity(copy);
+			if (writeQueue != null) writeQueue.save(copy);
+			else saveEntity(copy);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void addAll(Collection<T> entities) {
+		final List<T> copies = new ArrayList<>(entities.size());
+		for (T entity : entities) {
+			Objects.requireNonNull(entity);
+			Objects.requireNonNull(entity.getId());
+			if (entity instanceof NameEntity) Objects.requireNonNull(((NameEntity) entity).getName());
+			copies.add(copy(entity));
+		}
+		final List<ReentrantLock> batchLocks = lockAll(copies.stream().map(T::getId).toList());
+		try {
+			for (T copy : copies) {
+				this.entities.put(copy.getId(), copy);
+				indexEntity(copy);
+			}
+			if (writeQueue != null) copies.forEach(writeQueue::save);
+			else saveEntities(copies);
+		} finally {
+			batchLocks.forEach(ReentrantLock::unlock);
+		}
 	}
 	
 	@Override
 	public boolean removeById(String id) {
 		Objects.requireNonNull(id);
-		final boolean exist = entities.containsKey(id);
-		entities.remove(id);
-		deleteEnity(id);
-		return exist;
+		final ReentrantLock lock = getLock(id);
+		lock.lock();
+		try {
+			final boolean exist = entities.remove(id) != null;
+			unindexEntity(id);
+			if (writeQueue != null) writeQueue.delete(id);
+			else deleteEnity(id);
+			return exist;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public int removeAll(Collection<String> ids) {
+		ids.forEach(Objects::requireNonNull);
+		final List<ReentrantLock> batchLocks = lockAll(ids);
+		try {
+			int removed = 0;
+			for (String id : ids) {
+				if (entities.remove(id) != null) removed++;
+				unindexEntity(id);
+			}
+			if (writeQueue != null) ids.forEach(writeQueue::delete);
+			else deleteEntities(ids);
+			return removed;
+		} finally {
+			batchLocks.forEach(ReentrantLock::unlock);
+		}
 	}
 	
 	@Override
@@ -59,32 +144,102 @@ public class MemoryEntityRepository<T extends Entity<T>> extends EntityRepositor
 	}
 	
 	@Override
-	@SuppressWarnings("unchecked")
 	public Optional<T> getById(String id) {
 		if (id == null) return Optional.empty();
-		final T entity = entities.get(id);
-		if (entity == null) return Optional.empty();
-		return Optional.of((T) MODEL_MAPPER.map(entities.get(id), entity.getClass()));
+		return Optional.ofNullable(entities.get(id));
 	}
 	
 	@Override
 	public List<T> getAll() {
-		return Collections.unmodifiableList(entities.values().stream().toList());
+		return Collections.unmodifiableList(entities.values());
 	}
 	
 	@Override
 	public List<T> getRange(int beginn, int end) {
-		final List<T> list = this.entities.values().stream().toList();
-		final List<T> entities = new ArrayList<>();
-		for (int i = beginn; i < end; i++) {
-			entities.add(list.get(i));
-		}
-		return entities;
+		return Collections.unmodifiableList(entities.getRange(beginn, end));
+	}
+	
+	@Override
+	public List<T> getRangeAfter(String id, int limit) {
+		Objects.requireNonNull(id);
+		return Collections.unmodifiableList(entities.getRangeAfter(id, limit));
 	}
 
 	@Override
 	public int size() {
 		return entities.size();
 	}
+	
+	@Override
+	public Map<String, Object> getStatistics() {
+		final Map<String, Object> statistics = super.getStatistics();
+		if (writeQueue != null) statistics.putAll(writeQueue.getStatistics());
+		return statistics;
+	}
+	
+	@Override
+	public void close() {
+		if (checkpointer != null) checkpointer.shutdownNow();
+		if (writeQueue != null) writeQueue.close();
+		if (checkpoint != null) writeCheckpoint();
+		super.close();
+	}
+	
+	private ReentrantLock getLock(String id) {
+		return locks[getStripe(id)];
+	}
+	
+	private List<ReentrantLock> lockAll(Collection<String> ids) {
+		// Stripes are always locked in ascending order, so concurrent batches can't deadlock
+		final List<ReentrantLock> batchLocks = ids.stream().map(this::getStripe).distinct().sorted().map(stripe -> locks[stripe]).toList();
+		batchLocks.forEach(ReentrantLock::lock);
+		return batchLocks;
+	}
+	
+	private int getStripe(String id) {
+		final int hash = id.hashCode();
+		return (hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1);
+	}
+	
+	private boolean restoreCheckpoint() {
+		if (!checkpoint.exists()) return false;
+		try {
+			final long timestamp = checkpoint.getTimestamp();
+			final List<byte[]> records = checkpoint.readRecords();
+			final List<T> checkpointEntities = parseEntities(records, record -> {
+				try {
+					return checkpoint.parse(record);
+				} catch (IOException exception) {
+					return null;
+				}
+			}, true);
+			if (checkpointEntities.size() != records.size()) throw new IOException("Checkpoint contains unreadable records");
+			final Map<String, Long> files = listEntityFiles();
+			for (T entity : checkpointEntities) {
+				final Long modified = files.get(entity.getId());
+				if (modified != null && modified < timestamp) entities.put(entity.getId(), entity);
+			}
+			final List<String> changedIds = files.keySet().stream().filter(id -> !entities.containsKey(id)).toList();
+			final List<T> changedEntities = parseEntities(changedIds, id -> loadEntity(id).orElse(null), false);
+			for (T entity : changedEntities) {
+				entities.put(entity.getId(), entity);
+			}
+			LOGGER.info("Loaded {} {} from checkpoint and replayed {} changed files", size(), getName(), changedEntities.size());
+			return true;
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't restore checkpoint of {}, loading all files instead: {} {}", getName(), exception.getClass().getSimpleName(), exception.getMessage());
+			entities.clear();
+			return false;
+		}
+	}
+	
+	private void writeCheckpoint() {
+		final long timestamp = EntityCheckpoint.createTimestamp();
+		try {
+			checkpoint.write(entities.values(), timestamp);
+		} catch (IOException | RuntimeException exception) {
+			LOGGER.warn("Couldn't write checkpoint of {}: {} {}", getName(), exception.getClass().getSimpleName(), exception.getMessage());
+		}
+	}
 
 }
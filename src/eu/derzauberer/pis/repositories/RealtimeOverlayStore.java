@@ -0,0 +1,187 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.derzauberer.pis.configuration.SpringConfiguration;
+import eu.derzauberer.pis.model.RealtimeUpdate;
+
+public class RealtimeOverlayStore {
+
+	private final String name;
+	private final Path path;
+	private final Map<String, Map<Integer, RealtimeUpdate>> overlays = new HashMap<>();
+	private BufferedWriter journal;
+	private int journalRecords;
+	private long updates;
+	private long compactions;
+
+	protected static final String REALTIME_DIRECTORY = "data/realtime";
+	private static final String FILE_TYPE = ".journal";
+	private static final char UPDATE = 'U';
+	private static final char REMOVE = 'R';
+	private static final int COMPACTION_MINIMUM = 10000;
+	private static final ObjectMapper OBJECT_MAPPER = SpringConfiguration.getBean(ObjectMapper.class);
+	private static final Logger LOGGER = LoggerFactory.getLogger(RealtimeOverlayStore.class);
+
+	public RealtimeOverlayStore(String name) {
+		this.name = name;
+		this.path = Paths.get(REALTIME_DIRECTORY, name + FILE_TYPE);
+		try {
+			Files.createDirectories(path.getParent());
+			if (Files.exists(path)) replay();
+			journal = openJournal();
+		} catch (IOException exception) {
+			throw new IllegalStateException("Couldn't open realtime journal of " + name + ": " + exception.getMessage(), exception);
+		}
+		LOGGER.info("Loaded {} realtime overlays of {} from {} journal records", size(), name, journalRecords);
+	}
+
+	public synchronized List<RealtimeUpdate> update(Collection<RealtimeUpdate> updates) {
+		final List<RealtimeUpdate> merged = new ArrayList<>(updates.size());
+		try {
+			for (RealtimeUpdate update : updates) {
+				journal.write(UPDATE + OBJECT_MAPPER.writeValueAsString(update));
+				journal.newLine();
+				merged.add(apply(update));
+				journalRecords++;
+				this.updates++;
+			}
+			journal.flush();
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't append realtime updates to {}: {} {}", name, exception.getClass().getSimpleName(), exception.getMessage());
+		}
+		compactIfNeeded();
+		return merged;
+	}
+
+	public synchronized void removeLines(Collection<String> lineIds) {
+		try {
+			for (String lineId : lineIds) {
+				if (overlays.remove(lineId) == null) continue;
+				journal.write(REMOVE + lineId);
+				journal.newLine();
+				journalRecords++;
+			}
+			journal.flush();
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't append realtime removals to {}: {} {}", name, exception.getClass().getSimpleName(), exception.getMessage());
+		}
+		compactIfNeeded();
+	}
+
+	public synchronized Map<Integer, RealtimeUpdate> getByLine(String lineId) {
+		final Map<Integer, RealtimeUpdate> lineOverlays = overlays.get(lineId);
+		return lineOverlays != null ? Collections.unmodifiableMap(new TreeMap<>(lineOverlays)) : Map.of();
+	}
+
+	public synchronized RealtimeUpdate get(String lineId, int stopPosition) {
+		final Map<Integer, RealtimeUpdate> lineOverlays = overlays.get(lineId);
+		return lineOverlays != null ? lineOverlays.get(stopPosition) : null;
+	}
+
+	public synchronized boolean containsLine(String lineId) {
+		return overlays.containsKey(lineId);
+	}
+
+	public synchronized boolean isEmpty() {
+		return overlays.isEmpty();
+	}
+
+	public synchronized int size() {
+		return overlays.values().stream().mapToInt(Map::size).sum();
+	}
+
+	public synchronized Map<String, Object> getStatistics() {
+		final Map<String, Object> statistics = new HashMap<>();
+		statistics.put("realtimeOverlays", size());
+		statistics.put("realtimeLines", overlays.size());
+		statistics.put("realtimeUpdates", updates);
+		statistics.put("realtimeJournalRecords", journalRecords);
+		statistics.put("realtimeCompactions", compactions);
+		return statistics;
+	}
+
+	public synchronized void close() {
+		try {
+			journal.close();
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't close realtime journal of {}: {} {}", name, exception.getClass().getSimpleName(), exception.getMessage());
+		}
+	}
+
+	private RealtimeUpdate apply(RealtimeUpdate update) {
+		final Map<Integer, RealtimeUpdate> lineOverlays = overlays.computeIfAbsent(update.getLineId(), id -> new HashMap<>());
+		final RealtimeUpdate previous = lineOverlays.get(update.getStopPosition());
+		final RealtimeUpdate merged = previous != null ? previous.merge(update) : update;
+		lineOverlays.put(update.getStopPosition(), merged);
+		return merged;
+	}
+
+	private void replay() throws IOException {
+		int line = 0;
+		for (String record : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+			line++;
+			if (record.isEmpty()) continue;
+			try {
+				if (record.charAt(0) == UPDATE) apply(OBJECT_MAPPER.readValue(record.substring(1), RealtimeUpdate.class));
+				else if (record.charAt(0) == REMOVE) overlays.remove(record.substring(1));
+				journalRecords++;
+			} catch (IOException exception) {
+				// A torn last record after a crash only loses that update
+				LOGGER.warn("Skipped unreadable record {} in realtime journal of {}: {}", line, name, exception.getMessage());
+			}
+		}
+	}
+
+	private void compactIfNeeded() {
+		final int size = size();
+		if (journalRecords < COMPACTION_MINIMUM || journalRecords < size * 2) return;
+		final Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			journal.close();
+			try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+				for (Map<Integer, RealtimeUpdate> lineOverlays : overlays.values()) {
+					for (RealtimeUpdate update : lineOverlays.values()) {
+						writer.write(UPDATE + OBJECT_MAPPER.writeValueAsString(update));
+						writer.newLine();
+					}
+				}
+			}
+			Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			journalRecords = size;
+			compactions++;
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't compact realtime journal of {}: {} {}", name, exception.getClass().getSimpleName(), exception.getMessage());
+		} finally {
+			try {
+				journal = openJournal();
+			} catch (IOException exception) {
+				LOGGER.error("Couldn't reopen realtime journal of {}: {} {}!", name, exception.getClass().getSimpleName(), exception.getMessage());
+			}
+		}
+	}
+
+	private BufferedWriter openJournal() throws IOException {
+		return Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+}
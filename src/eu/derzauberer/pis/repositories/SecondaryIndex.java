@@ -0,0 +1,142 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import eu.derzauberer.pis.configuration.SpringConfiguration;
+import eu.derzauberer.pis.model.Entity;
+
+public class SecondaryIndex<T extends Entity<T>, K extends Comparable<? super K>> {
+
+	private final String name;
+	private final Path path;
+	private final Function<T, Collection<K>> keyFunction;
+	private final JavaType entriesType;
+	private final TreeMap<K, TreeSet<String>> ids = new TreeMap<>();
+	private final Map<String, List<K>> keys = new HashMap<>();
+
+	protected static final String INDEX_DIRECTORY = "data/indexes";
+	private static final String FILE_TYPE = ".json";
+	private static final ObjectMapper OBJECT_MAPPER = SpringConfiguration.getBean(ObjectMapper.class);
+
+	public SecondaryIndex(String repositoryName, String name, Class<K> keyType, Function<T, Collection<K>> keyFunction) {
+		this.name = name;
+		this.path = Paths.get(INDEX_DIRECTORY, repositoryName + "." + name + FILE_TYPE);
+		this.keyFunction = keyFunction;
+		this.entriesType = OBJECT_MAPPER.getTypeFactory().constructMapType(HashMap.class,
+				OBJECT_MAPPER.getTypeFactory().constructType(String.class),
+				OBJECT_MAPPER.getTypeFactory().constructCollectionType(List.class, keyType));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public synchronized void add(T entity) {
+		remove(entity.getId());
+		final Collection<K> entityKeys = keyFunction.apply(entity);
+		if (entityKeys == null || entityKeys.isEmpty()) return;
+		final List<K> distinctKeys = new ArrayList<>(new LinkedHashSet<>(entityKeys));
+		distinctKeys.removeIf(Objects::isNull);
+		if (distinctKeys.isEmpty()) return;
+		keys.put(entity.getId(), distinctKeys);
+		for (K key : distinctKeys) {
+			ids.computeIfAbsent(key, k -> new TreeSet<>()).add(entity.getId());
+		}
+	}
+
+	public synchronized void remove(String id) {
+		final List<K> entityKeys = keys.remove(id);
+		if (entityKeys == null) return;
+		for (K key : entityKeys) {
+			final TreeSet<String> keyIds = ids.get(key);
+			if (keyIds == null) continue;
+			keyIds.remove(id);
+			if (keyIds.isEmpty()) ids.remove(key);
+		}
+	}
+
+	public synchronized List<String> get(K key) {
+		Objects.requireNonNull(key);
+		final TreeSet<String> keyIds = ids.get(key);
+		return keyIds != null ? new ArrayList<>(keyIds) : new ArrayList<>();
+	}
+
+	public synchronized List<String> getRange(K from, K to) {
+		Objects.requireNonNull(from);
+		Objects.requireNonNull(to);
+		if (from.compareTo(to) > 0) return new ArrayList<>();
+		final NavigableMap<K, TreeSet<String>> range = ids.subMap(from, true, to, false);
+		final LinkedHashSet<String> rangeIds = new LinkedHashSet<>();
+		range.values().forEach(rangeIds::addAll);
+		return new ArrayList<>(rangeIds);
+	}
+
+	public synchronized List<String> getIds() {
+		return new ArrayList<>(keys.keySet());
+	}
+
+	public synchronized int size() {
+		return keys.size();
+	}
+
+	public synchronized int keyCount() {
+		return ids.size();
+	}
+
+	public synchronized void clear() {
+		ids.clear();
+		keys.clear();
+	}
+
+	public boolean exists() {
+		return Files.exists(path);
+	}
+
+	public long load() throws IOException {
+		final ObjectNode node = (ObjectNode) OBJECT_MAPPER.readTree(path.toFile());
+		if (node == null || !node.has("timestamp") || !node.has("entries")) throw new IOException("Invalid index file " + path);
+		final Map<String, List<K>> entries = OBJECT_MAPPER.readValue(OBJECT_MAPPER.treeAsTokens(node.get("entries")), entriesType);
+		synchronized (this) {
+			clear();
+			entries.forEach((id, entityKeys) -> {
+				keys.put(id, entityKeys);
+				for (K key : entityKeys) {
+					ids.computeIfAbsent(key, k -> new TreeSet<>()).add(id);
+				}
+			});
+		}
+		return node.get("timestamp").asLong();
+	}
+
+	public void save(long timestamp) throws IOException {
+		Files.createDirectories(path.getParent());
+		final Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+		final ObjectNode node = OBJECT_MAPPER.createObjectNode();
+		node.put("timestamp", timestamp);
+		synchronized (this) {
+			node.set("entries", OBJECT_MAPPER.valueToTree(keys));
+		}
+		OBJECT_MAPPER.writeValue(temporaryPath.toFile(), node);
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
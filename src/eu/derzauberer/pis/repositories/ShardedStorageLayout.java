@@ -0,0 +1,74 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ShardedStorageLayout implements StorageLayout {
+	
+	@Override
+	public String getName() {
+		return "sharded";
+	}
+	
+	@Override
+	public Path resolve(Path directory, String id, String fileType) {
+		// String.hashCode() is specified and therefore stable across runs, the bits
+		// are mixed because short ids only differ in the lowest bits of their hash
+		int mixed = id.hashCode();
+		mixed ^= mixed >>> 16;
+		mixed *= 0x85EBCA6B;
+		mixed ^= mixed >>> 13;
+		mixed *= 0xC2B2AE35;
+		mixed ^= mixed >>> 16;
+		final String hash = String.format("%08x", mixed);
+		return directory.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(id + fileType);
+	}
+	
+	@Override
+	public List<String> listIds(Path directory, String fileType) throws IOException {
+		final List<String> ids = new ArrayList<>();
+		if (!Files.isDirectory(directory)) return ids;
+		try (DirectoryStream<Path> firstLevel = Files.newDirectoryStream(directory, ShardedStorageLayout::isShard)) {
+			for (Path first : firstLevel) {
+				try (DirectoryStream<Path> secondLevel = Files.newDirectoryStream(first, ShardedStorageLayout::isShard)) {
+					for (Path second : secondLevel) {
+						try (DirectoryStream<Path> paths = Files.newDirectoryStream(second, "*" + fileType)) {
+							for (Path path : paths) {
+								final String fileName = path.getFileName().toString();
+								ids.add(fileName.substring(0, fileName.length() - fileType.length()));
+							}
+						}
+					}
+				}
+			}
+		}
+		return ids;
+	}
+	
+	@Override
+	public long getLastModified(Path directory) throws IOException {
+		// Files are only added to and removed from the shards, which doesn't touch the directories above them
+		if (!Files.isDirectory(directory)) return 0;
+		long lastModified = Files.getLastModifiedTime(directory).toMillis();
+		try (DirectoryStream<Path> firstLevel = Files.newDirectoryStream(directory, ShardedStorageLayout::isShard)) {
+			for (Path first : firstLevel) {
+				lastModified = Math.max(lastModified, Files.getLastModifiedTime(first).toMillis());
+				try (DirectoryStream<Path> secondLevel = Files.newDirectoryStream(first, ShardedStorageLayout::isShard)) {
+					for (Path second : secondLevel) {
+						lastModified = Math.max(lastModified, Files.getLastModifiedTime(second).toMillis());
+					}
+				}
+			}
+		}
+		return lastModified;
+	}
+	
+	private static boolean isShard(Path path) {
+		return path.getFileName().toString().length() == 2 && Files.isDirectory(path);
+	}
+
+}
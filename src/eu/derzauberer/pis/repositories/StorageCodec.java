@@ -0,0 +1,34 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public interface StorageCodec {
+	
+	StorageCodec PRETTY = new JsonStorageCodec("pretty", true);
+	StorageCodec COMPACT = new JsonStorageCodec("compact", false);
+	StorageCodec DEFLATE = new DeflateStorageCodec();
+	
+	String getName();
+	
+	byte[] encode(ObjectMapper mapper, Object entity) throws IOException;
+	
+	boolean canDecode(int firstByte);
+	
+	<T> T decode(ObjectMapper mapper, InputStream input, Class<T> type) throws IOException;
+	
+	static StorageCodec of(String name) {
+		if (PRETTY.getName().equalsIgnoreCase(name)) return PRETTY;
+		if (COMPACT.getName().equalsIgnoreCase(name)) return COMPACT;
+		if (DEFLATE.getName().equalsIgnoreCase(name)) return DEFLATE;
+		throw new IllegalArgumentException("The storage codec " + name + " does not exist!");
+	}
+	
+	static StorageCodec detect(int firstByte) {
+		// Files of different codecs can be mixed in one repository, e.g. while entities are rewritten
+		return DEFLATE.canDecode(firstByte) ? DEFLATE : PRETTY;
+	}
+
+}
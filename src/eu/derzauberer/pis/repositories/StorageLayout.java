@@ -0,0 +1,26 @@
+package eu.derzauberer.pis.repositories;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+public interface StorageLayout {
+	
+	StorageLayout FLAT = new FlatStorageLayout();
+	StorageLayout SHARDED = new ShardedStorageLayout();
+	
+	String getName();
+	
+	Path resolve(Path directory, String id, String fileType);
+	
+	List<String> listIds(Path directory, String fileType) throws IOException;
+	
+	long getLastModified(Path directory) throws IOException;
+	
+	static StorageLayout of(String name) {
+		if (FLAT.getName().equalsIgnoreCase(name)) return FLAT;
+		if (SHARDED.getName().equalsIgnoreCase(name)) return SHARDED;
+		throw new IllegalArgumentException("The storage layout " + name + " does not exist!");
+	}
+
+}
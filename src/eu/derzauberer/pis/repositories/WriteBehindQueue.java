@@ -0,0 +1,153 @@
+package eu.derzauberer.pis.repositories;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.derzauberer.pis.model.Entity;
+
+public class WriteBehindQueue<T extends Entity<T>> {
+
+	private final String name;
+	private final Consumer<T> saveAction;
+	private final Consumer<String> deleteAction;
+	private final int capacity;
+	private final int batchSize;
+	private final Map<String, Optional<T>> pending = new LinkedHashMap<>();
+	private final ScheduledExecutorService flusher;
+	private boolean closed = false;
+	private int maxQueueDepth;
+	private long coalescedWrites;
+	private long flushedWrites;
+	private long flushedBatches;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+	public WriteBehindQueue(String name, Consumer<T> saveAction, Consumer<String> deleteAction, int capacity, int batchSize, long maxStaleness) {
+		this.name = name;
+		this.saveAction = saveAction;
+		this.deleteAction = deleteAction;
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "write-behind-" + name);
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flushAll, maxStaleness, maxStaleness, TimeUnit.MILLISECONDS);
+	}
+
+	public void save(T entity) {
+		enqueue(entity.getId(), Optional.of(entity));
+	}
+
+	public void delete(String id) {
+		enqueue(id, Optional.empty());
+	}
+
+	public synchronized int getQueueDepth() {
+		return pending.size();
+	}
+
+	public synchronized Map<String, Object> getStatistics() {
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("queueDepth", pending.size());
+		statistics.put("maxQueueDepth", maxQueueDepth);
+		statistics.put("queueCapacity", capacity);
+		statistics.put("coalescedWrites", coalescedWrites);
+		statistics.put("flushedWrites", flushedWrites);
+		statistics.put("flushedBatches", flushedBatches);
+		return statistics;
+	}
+
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+		final int remaining = getQueueDepth();
+		flushAll();
+		if (remaining > 0) LOGGER.info("Flushed {} pending writes of {} on shutdown", remaining, name);
+	}
+
+	private synchronized void enqueue(String id, Optional<T> entity) {
+		if (closed) {
+			entity.ifPresentOrElse(saveAction, () -> deleteAction.accept(id));
+			return;
+		}
+		if (pending.containsKey(id)) {
+			pending.put(id, entity);
+			coalescedWrites++;
+			return;
+		}
+		while (pending.size() >= capacity && !closed) {
+			requestFlush();
+			try {
+				wait();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		pending.put(id, entity);
+		maxQueueDepth = Math.max(maxQueueDepth, pending.size());
+		if (pending.size() == batchSize) requestFlush();
+	}
+
+	private void requestFlush() {
+		try {
+			flusher.execute(this::flushBatch);
+		} catch (RejectedExecutionException exception) {
+			// The flusher is shutting down and drains the queue in close()
+		}
+	}
+
+	private void flushAll() {
+		while (flushBatch() > 0);
+	}
+
+	private int flushBatch() {
+		final List<Entry<String, Optional<T>>> batch = new ArrayList<>();
+		synchronized (this) {
+			final Iterator<Entry<String, Optional<T>>> iterator = pending.entrySet().iterator();
+			while (iterator.hasNext() && batch.size() < batchSize) {
+				final Entry<String, Optional<T>> entry = iterator.next();
+				batch.add(Map.entry(entry.getKey(), entry.getValue()));
+				iterator.remove();
+			}
+			notifyAll();
+		}
+		for (Entry<String, Optional<T>> entry : batch) {
+			try {
+				entry.getValue().ifPresentOrElse(saveAction, () -> deleteAction.accept(entry.getKey()));
+			} catch (RuntimeException exception) {
+				LOGGER.warn("Couldn't flush entity with id {} from {}: {} {}", entry.getKey(), name, exception.getClass().getSimpleName(), exception.getMessage());
+			}
+		}
+		if (!batch.isEmpty()) {
+			synchronized (this) {
+				flushedWrites += batch.size();
+				flushedBatches++;
+			}
+		}
+		return batch.size();
+	}
+
+}
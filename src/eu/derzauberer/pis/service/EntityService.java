@@ -1,23 +1,32 @@
 package eu.derzauberer.pis.service;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
+import eu.derzauberer.pis.dto.ImportResultDto;
 import eu.derzauberer.pis.model.Entity;
 import eu.derzauberer.pis.model.NameEntity;
 import eu.derzauberer.pis.repositories.EntityRepository;
+import eu.derzauberer.pis.repositories.StorageLayout;
 import eu.derzauberer.pis.util.Collectable;
 
 public abstract class EntityService<T extends Entity<T> & NameEntity> implements Collectable<T> {
 	
 	private final EntityRepository<T> repository;
-	private List<Consumer<T>> onAdd = new ArrayList<>();
-	private List<Consumer<String>> onRemove = new ArrayList<>();
+	private List<Consumer<Collection<T>>> onAdd = new CopyOnWriteArrayList<>();
+	private List<Consumer<Collection<String>>> onRemove = new CopyOnWriteArrayList<>();
 
 	public EntityService(EntityRepository<T> repository) {
 		this.repository = repository;
+		repository.addOnArchive(this::onArchive);
 	}
 	
 	public String getName() {
@@ -29,23 +38,53 @@ public abstract class EntityService<T extends Entity<T> & NameEntity> implements
 			throw new IllegalArgumentException("Entity id must be not null and not empty!");
 		}
 		repository.add(entity);
-		onAdd.forEach(consumer -> consumer.accept(entity));
+		notifyOnAdd(List.of(entity));
+	}
+	
+	public void addAll(Collection<T> entities) {
+		for (T entity : entities) {
+			if (entity.getId() == null || entity.getId().isEmpty()) {
+				throw new IllegalArgumentException("Entity id must be not null and not empty!");
+			}
+		}
+		if (entities.isEmpty()) return;
+		repository.addAll(entities);
+		notifyOnAdd(entities);
 	}
 	
 	public boolean removeById(String id) {
 		if (id == null || id.isEmpty()) {
 			throw new IllegalArgumentException("Id must be not null and not empty!");
 		}
-		onRemove.forEach(consumer -> consumer.accept(id));
+		notifyOnRemove(List.of(id));
 		return repository.removeById(id);
 	}
 	
+	public int removeAll(Collection<String> ids) {
+		for (String id : ids) {
+			if (id == null || id.isEmpty()) {
+				throw new IllegalArgumentException("Id must be not null and not empty!");
+			}
+		}
+		if (ids.isEmpty()) return 0;
+		notifyOnRemove(ids);
+		return repository.removeAll(ids);
+	}
+	
 	public boolean containsById(String id) {
 		return repository.containsById(id);
 	}
 	
+	/**
+	 * Returns the shared stored instance of the entity, which must not be
+	 * modified. Use {@link #getCopyById(String)} to change an entity.
+	 */
 	public Optional<T> getById(String id) {
-		return repository.getById(id);
+		return repository.getById(id).or(() -> repository.getArchivedById(id));
+	}
+	
+	public Optional<T> getCopyById(String id) {
+		return repository.getCopyById(id);
 	}
 	
 	public abstract Collectable<T> search(String search);
@@ -60,6 +99,11 @@ public abstract class EntityService<T extends Entity<T> & NameEntity> implements
 		return repository.getRange(beginn, end);
 	}
 	
+	@Override
+	public List<T> getRangeAfter(String id, int limit) {
+		return repository.getRangeAfter(id, limit);
+	}
+	
 	@Override
 	public int size() {
 		return repository.size();
@@ -70,20 +114,64 @@ public abstract class EntityService<T extends Entity<T> & NameEntity> implements
 		return repository.isEmpty();
 	}
 	
-	public String exportEntities() {
-		return repository.exportEntities();
+	public <K extends Comparable<? super K>> List<T> findByIndex(String indexName, K key) {
+		return repository.findByIndex(indexName, key);
+	}
+	
+	public <K extends Comparable<? super K>> List<T> findByIndexRange(String indexName, K from, K to) {
+		return repository.findByIndexRange(indexName, from, to);
+	}
+	
+	public Map<String, Object> getStatistics() {
+		return repository.getStatistics();
+	}
+	
+	public int migrateLayout(StorageLayout layout) {
+		return repository.migrateLayout(layout);
 	}
 	
-	public void importEntities(String json) {
-		repository.importEntities(json);
+	public int recodeEntities() {
+		return repository.recodeEntities();
+	}
+	
+	public int exportEntities(OutputStream output, boolean compact, boolean gzip) throws IOException {
+		return repository.exportEntities(output, compact, gzip);
+	}
+	
+	public ImportResultDto importEntities(InputStream input) {
+		return repository.importEntities(input, this::addAll);
+	}
+	
+	protected <K extends Comparable<? super K>> void registerIndex(String indexName, Class<K> keyType, Function<T, Collection<K>> keyFunction) {
+		repository.registerIndex(indexName, keyType, keyFunction);
 	}
 	
 	public void addOnAdd(Consumer<T> action) {
+		onAdd.add(entities -> entities.forEach(action));
+	}
+	
+	public void addOnAddAll(Consumer<Collection<T>> action) {
 		onAdd.add(action);
 	}
 	
 	public void addOnRemove(Consumer<String> action) {
+		onRemove.add(ids -> ids.forEach(action));
+	}
+	
+	public void addOnRemoveAll(Consumer<Collection<String>> action) {
 		onRemove.add(action);
 	}
 	
+	protected void onArchive(Collection<T> entities) {
+		notifyOnRemove(entities.stream().map(Entity::getId).toList());
+	}
+	
+	protected void notifyOnAdd(Collection<T> entities) {
+		onAdd.forEach(consumer -> consumer.accept(entities));
+	}
+	
+	protected void notifyOnRemove(Collection<String> ids) {
+		onRemove.forEach(consumer -> consumer.accept(ids));
+	}
+	
 }
@@ -1,23 +1,52 @@
 package eu.derzauberer.pis.service;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
+
 import eu.derzauberer.pis.components.SearchComponent;
 import eu.derzauberer.pis.configuration.SpringConfiguration;
+import eu.derzauberer.pis.dto.TrafficEntryDto;
 import eu.derzauberer.pis.model.Line;
 import eu.derzauberer.pis.model.LineStop;
+import eu.derzauberer.pis.model.RealtimeUpdate;
 import eu.derzauberer.pis.model.Station;
 import eu.derzauberer.pis.model.StationTraffic;
 import eu.derzauberer.pis.model.StationTrafficEntry;
+import eu.derzauberer.pis.repositories.EntityCheckpoint;
 import eu.derzauberer.pis.repositories.EntityRepository;
+import eu.derzauberer.pis.repositories.IndexMarker;
+import eu.derzauberer.pis.repositories.RealtimeOverlayStore;
+import eu.derzauberer.pis.repositories.StorageLayout;
 import eu.derzauberer.pis.util.Collectable;
 import eu.derzauberer.pis.util.ProgressStatus;
+import eu.derzauberer.pis.util.StationBoardCache;
+import eu.derzauberer.pis.util.StationBoardCache.StationBoard;
+import eu.derzauberer.pis.util.TrafficCursor;
 
 @Service
 public class LineService extends EntityService<Line> {
@@ -25,6 +54,15 @@ public class LineService extends EntityService<Line> {
 	private final EntityRepository<Line> lineRepository;
 	private final EntityRepository<StationTraffic> stationTrafficRepository;
 	private final SearchComponent<Line> searchComponent;
+	private final IndexMarker trafficIndexMarker;
+	private final StationBoardCache boardCache = new StationBoardCache(SpringConfiguration.boardCacheSize);
+	private final RealtimeOverlayStore realtimeStore = new RealtimeOverlayStore("lines");
+	
+	private static final String ROUTE_INDEX = "route";
+	private static final int TRAFFIC_INDEX_VERSION = 2;
+	private static final int REBUILD_BATCH_SIZE = 500;
+	private static final int MAX_WINDOW_DAYS = 7;
+	private static final Logger LOGGER = LoggerFactory.getLogger(LineService.class);
 	
 	@Autowired
 	public LineService(EntityRepository<Line> lineRepository, EntityRepository<StationTraffic> stationTrafficRepository) throws InterruptedException {
@@ -32,28 +70,87 @@ public class LineService extends EntityService<Line> {
 		this.lineRepository = lineRepository;
 		this.stationTrafficRepository = stationTrafficRepository;
 		searchComponent = new SearchComponent<>(this);
+		registerIndex(ROUTE_INDEX, String.class, line -> line.getRouteId() != null ? List.of(line.getRouteId()) : List.of());
+		trafficIndexMarker = SpringConfiguration.checkpointInterval >= 0 ? new IndexMarker("line_traffic_index", TRAFFIC_INDEX_VERSION) : null;
 		if (SpringConfiguration.indexing) {
-			ProgressStatus progress = new ProgressStatus("Indexing", lineRepository.getName(), lineRepository.size());
-			for (Line line : lineRepository.getAll()) {
-				addLineToTrafficIndex(line);
-				progress.count();
+			final long timestamp = EntityCheckpoint.createTimestamp();
+			if (readTrafficIndexMarker()) {
+				updateTrafficIndex();
+			} else {
+				rebuildTrafficIndex();
 			}
+			writeTrafficIndexMarker(timestamp);
 		}
 	}
 	
 	@Override
 	public void add(Line line) {
-		if (lineRepository.containsById(line.getId())) {
-			removeLineToTrafficIndex(line);
+		addAll(List.of(line));
+	}
+	
+	@Override
+	public void addAll(Collection<Line> lines) {
+		for (Line line : lines) {
+			if (line.getId() == null || line.getId().isEmpty()) {
+				throw new IllegalArgumentException("Entity id must be not null and not empty!");
+			}
+		}
+		final Map<String, StationTraffic> changedTraffic = new HashMap<>();
+		final List<String> reroutedLineIds = new ArrayList<>();
+		for (Line line : lines) {
+			lineRepository.getById(line.getId()).ifPresent(existing -> {
+				removeLineToTrafficIndex(existing, changedTraffic);
+				// Overlays are keyed by stop position, so they don't fit a line with other stations
+				if (!getStationIds(existing).equals(getStationIds(line))) reroutedLineIds.add(line.getId());
+			});
+		}
+		lineRepository.addAll(lines);
+		for (Line line : lines) {
+			addLineToTrafficIndex(line, changedTraffic);
 		}
-		lineRepository.add(line);
-		addLineToTrafficIndex(line);
+		stationTrafficRepository.addAll(changedTraffic.values());
+		boardCache.invalidate(changedTraffic.keySet());
+		if (!reroutedLineIds.isEmpty()) realtimeStore.removeLines(reroutedLineIds);
+		notifyOnAdd(lines);
 	}
 	
 	@Override
 	public boolean removeById(String lineId) {
-		lineRepository.getById(lineId).ifPresent(this::removeLineToTrafficIndex);
-		return lineRepository.removeById(lineId);
+		return removeAll(List.of(lineId)) > 0;
+	}
+	
+	@Override
+	public int removeAll(Collection<String> lineIds) {
+		final Map<String, StationTraffic> changedTraffic = new HashMap<>();
+		for (String lineId : lineIds) {
+			lineRepository.getById(lineId).ifPresent(line -> removeLineToTrafficIndex(line, changedTraffic));
+		}
+		stationTrafficRepository.addAll(changedTraffic.values());
+		boardCache.invalidate(changedTraffic.keySet());
+		realtimeStore.removeLines(lineIds);
+		notifyOnRemove(lineIds);
+		return lineRepository.removeAll(lineIds);
+	}
+	
+	@Override
+	protected void onArchive(Collection<Line> lines) {
+		// Archived lines leave the station days that are still in the hot repository
+		final Map<String, StationTraffic> changedTraffic = new HashMap<>();
+		for (Line line : lines) {
+			removeLineToTrafficIndex(line, changedTraffic);
+		}
+		stationTrafficRepository.addAll(changedTraffic.values());
+		boardCache.invalidate(changedTraffic.keySet());
+		final List<String> lineIds = lines.stream().map(Line::getId).toList();
+		realtimeStore.removeLines(lineIds);
+		notifyOnRemove(lineIds);
+	}
+	
+	@Override
+	public Optional<Line> getById(String id) {
+		if (id == null || !realtimeStore.containsLine(id)) return super.getById(id);
+		// Overlays are merged into a copy, so the repository keeps the planned state of the line
+		return super.getCopyById(id).map(this::applyRealtime);
 	}
 	
 	@Override
@@ -61,85 +158,393 @@ public class LineService extends EntityService<Line> {
 		return searchComponent.search(search);
 	}
 	
-	public SortedSet<StationTrafficEntry> findArrivalsSinceHour(Station station, LocalDateTime dateTime, int limit) {
-		final StationTraffic traffic = getOrCreateStationTraffic(station.getId(), dateTime.toLocalDate());
-		final SortedSet<StationTrafficEntry> results = new TreeSet<>();
-		int i = 0;
-		for (int j = dateTime.getHour(); j < 23; j++) {
-			for (StationTrafficEntry entry : traffic.getArrivalsInHour(j)) {
-				results.add(entry);
-				if (i++ >= limit) {
-					return results;
-				}
+	public List<Line> getLinesByRouteId(String routeId) {
+		return findByIndex(ROUTE_INDEX, routeId);
+	}
+	
+	public List<RealtimeUpdate> updateRealtime(Collection<RealtimeUpdate> updates) {
+		for (RealtimeUpdate update : updates) {
+			if (update.getLineId() == null) throw new IllegalArgumentException("Line id must be not null!");
+			final Line line = lineRepository.getById(update.getLineId()).orElseThrow(() -> new IllegalArgumentException("Line with id " + update.getLineId() + " does not exist!"));
+			if (update.getStopPosition() < 0 || update.getStopPosition() >= line.getStops().size()) {
+				throw new IllegalArgumentException("Line with id " + update.getLineId() + " has no stop at position " + update.getStopPosition() + "!");
 			}
 		}
-		return results;
+		return realtimeStore.update(updates);
 	}
 	
-	public int getAmountOfArrivalsSinceHour(Station station, LocalDateTime dateTime, int limit) {
-		final StationTraffic traffic = getOrCreateStationTraffic(station.getId(), dateTime.toLocalDate());
-		int i = 0;
-		for (int j = dateTime.getHour(); j < 23; j++) {
-			i += traffic.getArrivalsInHour(j).size();
+	public List<StationTrafficEntry> findArrivalsSinceHour(Station station, LocalDateTime dateTime, int offset, int limit) {
+		return applyRealtime(getStationBoard(station.getId(), dateTime.toLocalDate()).getArrivalsSinceHour(dateTime.getHour(), offset, limit));
+	}
+	
+	public int getAmountOfArrivalsSinceHour(Station station, LocalDateTime dateTime) {
+		return getStationBoard(station.getId(), dateTime.toLocalDate()).getAmountOfArrivalsSinceHour(dateTime.getHour());
+	}
+	
+	public List<StationTrafficEntry> findDeparturesSinceHour(Station station, LocalDateTime dateTime, int offset, int limit) {
+		return applyRealtime(getStationBoard(station.getId(), dateTime.toLocalDate()).getDeparturesSinceHour(dateTime.getHour(), offset, limit));
+	}
+	
+	public int getAmountOfDeparturesSinceHour(Station station, LocalDateTime dateTime) {
+		return getStationBoard(station.getId(), dateTime.toLocalDate()).getAmountOfDeparturesSinceHour(dateTime.getHour());
+	}
+	
+	public List<TrafficEntryDto> findArrivalsInWindow(Station station, LocalDateTime from, Duration duration, int limit) {
+		return findTrafficInWindow(station.getId(), false, from, null, 0, duration, limit);
+	}
+	
+	public List<TrafficEntryDto> findArrivalsAfter(Station station, TrafficCursor cursor, Duration duration, int limit) {
+		return findTrafficInWindow(station.getId(), false, cursor.getDateTime(), cursor.getLineId(), cursor.getStationPosition(), duration, limit);
+	}
+	
+	public List<TrafficEntryDto> findDeparturesInWindow(Station station, LocalDateTime from, Duration duration, int limit) {
+		return findTrafficInWindow(station.getId(), true, from, null, 0, duration, limit);
+	}
+	
+	public List<TrafficEntryDto> findDeparturesAfter(Station station, TrafficCursor cursor, Duration duration, int limit) {
+		return findTrafficInWindow(station.getId(), true, cursor.getDateTime(), cursor.getLineId(), cursor.getStationPosition(), duration, limit);
+	}
+	
+	public int countArrivalsInWindow(Station station, LocalDateTime from, Duration duration, List<TrafficEntryDto> results) {
+		return countTrafficInWindow(station.getId(), false, from, null, 0, duration, results);
+	}
+	
+	public int countArrivalsAfter(Station station, TrafficCursor cursor, Duration duration, List<TrafficEntryDto> results) {
+		return countTrafficInWindow(station.getId(), false, cursor.getDateTime(), cursor.getLineId(), cursor.getStationPosition(), duration, results);
+	}
+	
+	public int countDeparturesInWindow(Station station, LocalDateTime from, Duration duration, List<TrafficEntryDto> results) {
+		return countTrafficInWindow(station.getId(), true, from, null, 0, duration, results);
+	}
+	
+	public int countDeparturesAfter(Station station, TrafficCursor cursor, Duration duration, List<TrafficEntryDto> results) {
+		return countTrafficInWindow(station.getId(), true, cursor.getDateTime(), cursor.getLineId(), cursor.getStationPosition(), duration, results);
+	}
+	
+	@Override
+	public Map<String, Object> getStatistics() {
+		final Map<String, Object> statistics = super.getStatistics();
+		statistics.putAll(boardCache.getStatistics());
+		statistics.putAll(realtimeStore.getStatistics());
+		return statistics;
+	}
+	
+	@Override
+	public int migrateLayout(StorageLayout layout) {
+		return super.migrateLayout(layout) + stationTrafficRepository.migrateLayout(layout);
+	}
+	
+	@Override
+	public int recodeEntities() {
+		return super.recodeEntities() + stationTrafficRepository.recodeEntities();
+	}
+	
+	@PreDestroy
+	public void close() {
+		if (SpringConfiguration.indexing) writeTrafficIndexMarker(EntityCheckpoint.createTimestamp());
+		realtimeStore.close();
+	}
+	
+	public String createLineId() {
+		return String.format("%08x", Long.valueOf(System.nanoTime()).toString().hashCode());
+	}
+	
+	private void addLineToTrafficIndex(Line line, Map<String, StationTraffic> changedTraffic) {
+		for (TrafficPosting posting : createTrafficPostings(line)) {
+			final StationTraffic traffic = getOrCreateStationTraffic(changedTraffic, posting.stationId, posting.date);
+			if (posting.arrival) traffic.addArrival(posting.entry);
+			else traffic.addDeparture(posting.entry);
 		}
-		return i;
 	}
 	
-	public SortedSet<StationTrafficEntry> findDeparturesSinceHour(Station station, LocalDateTime dateTime, int limit) {
-		final StationTraffic traffic = getOrCreateStationTraffic(station.getId(), dateTime.toLocalDate());
-		final SortedSet<StationTrafficEntry> results = new TreeSet<>();
-		int i = 0;
-		for (int j = dateTime.getHour(); j < 23; j++) {
-			for (StationTrafficEntry entry : traffic.getDeparturesInHour(j)) {
-				results.add(entry);
-				if (i++ >= limit) {
-					return results;
+	private void removeLineToTrafficIndex(Line line, Map<String, StationTraffic> changedTraffic) {
+		for (TrafficPosting posting : createTrafficPostings(line)) {
+			final String id = StationTraffic.createIdFormNameAndDate(posting.stationId, posting.date);
+			if (!changedTraffic.containsKey(id) && !stationTrafficRepository.containsById(id)) continue;
+			final StationTraffic traffic = getOrCreateStationTraffic(changedTraffic, posting.stationId, posting.date);
+			if (posting.arrival) traffic.removeArrival(posting.entry.getTime(), line.getId());
+			else traffic.removeDeparture(posting.entry.getTime(), line.getId());
+		}
+	}
+	
+	private List<TrafficEntryDto> findTrafficInWindow(String stationId, boolean departure, LocalDateTime from, String afterLineId, int afterPosition, Duration duration, int limit) {
+		final LocalDateTime to = duration != null ? from.plus(duration) : null;
+		final LocalDate lastDate = to != null ? to.toLocalDate() : from.toLocalDate().plusDays(MAX_WINDOW_DAYS - 1);
+		final PriorityQueue<DayCursor> cursors = new PriorityQueue<>(Comparator.comparing(DayCursor::getDateTime).thenComparing(DayCursor::getEntry));
+		final List<TrafficEntryDto> results = new ArrayList<>();
+		LocalDate nextDate = from.toLocalDate();
+		while (limit < 0 || results.size() < limit) {
+			// A station day is only loaded once the merge has reached its first possible entry
+			while (!nextDate.isAfter(lastDate) && (cursors.isEmpty() || !cursors.peek().getDateTime().isBefore(nextDate.atStartOfDay()))) {
+				final StationBoard board = getStationBoard(stationId, nextDate);
+				final List<StationTrafficEntry> entries;
+				if (!nextDate.equals(from.toLocalDate())) {
+					entries = departure ? board.getDeparturesSince(LocalTime.MIN) : board.getArrivalsSince(LocalTime.MIN);
+				} else if (afterLineId == null) {
+					entries = departure ? board.getDeparturesSince(from.toLocalTime()) : board.getArrivalsSince(from.toLocalTime());
+				} else {
+					// Resuming from a cursor skips everything up to and including the entry it was made from
+					entries = departure ? board.getDeparturesAfter(from.toLocalTime(), afterLineId, afterPosition) : board.getArrivalsAfter(from.toLocalTime(), afterLineId, afterPosition);
 				}
+				final DayCursor cursor = new DayCursor(nextDate, entries);
+				if (cursor.hasEntry()) cursors.add(cursor);
+				nextDate = nextDate.plusDays(1);
 			}
+			final DayCursor cursor = cursors.poll();
+			if (cursor == null || (to != null && cursor.getDateTime().isAfter(to))) break;
+			results.add(createTrafficEntryDto(cursor.getDateTime(), cursor.getEntry()));
+			cursor.next();
+			if (cursor.hasEntry()) cursors.add(cursor);
 		}
 		return results;
 	}
 	
-	public int getAmountOfDeparturesSinceHour(Station station, LocalDateTime dateTime, int limit) {
-		final StationTraffic traffic = getOrCreateStationTraffic(station.getId(), dateTime.toLocalDate());
-		int i = 0;
-		for (int j = dateTime.getHour(); j < 23; j++) {
-			i += traffic.getDeparturesInHour(j).size();
+	private int countTrafficInWindow(String stationId, boolean departure, LocalDateTime from, String afterLineId, int afterPosition, Duration duration, List<TrafficEntryDto> results) {
+		// Without a duration only the days up to the last result are counted, the merge has already loaded them
+		if (duration == null && results.isEmpty()) return 0;
+		final LocalDateTime to = duration != null ? from.plus(duration) : null;
+		final LocalDate lastDate = to != null ? to.toLocalDate() : results.get(results.size() - 1).getDateTime().toLocalDate();
+		int total = 0;
+		// Each day is counted from its hour prefix counts and a binary search at both ends of the window
+		for (LocalDate date = from.toLocalDate(); !date.isAfter(lastDate); date = date.plusDays(1)) {
+			final StationBoard board = getStationBoard(stationId, date);
+			final int size = departure ? board.getAmountOfDeparturesSinceHour(0) : board.getAmountOfArrivalsSinceHour(0);
+			int begin = 0;
+			if (date.equals(from.toLocalDate()) && afterLineId == null) {
+				begin = size - (departure ? board.getDeparturesSince(from.toLocalTime()) : board.getArrivalsSince(from.toLocalTime())).size();
+			} else if (date.equals(from.toLocalDate())) {
+				begin = size - (departure ? board.getDeparturesAfter(from.toLocalTime(), afterLineId, afterPosition) : board.getArrivalsAfter(from.toLocalTime(), afterLineId, afterPosition)).size();
+			}
+			int end = size;
+			if (to != null && date.equals(lastDate)) {
+				end = departure ? board.getAmountOfDeparturesUntil(to.toLocalTime()) : board.getAmountOfArrivalsUntil(to.toLocalTime());
+			}
+			total += Math.max(0, end - begin);
 		}
-		return i;
+		return total;
 	}
 	
-	public String createLineId() {
-		return String.format("%08x", Long.valueOf(System.nanoTime()).toString().hashCode());
+	private static List<String> getStationIds(Line line) {
+		return line.getStops().stream().map(LineStop::getStationId).toList();
+	}
+	
+	private void updateTrafficIndex() {
+		final Set<String> lineIds = new HashSet<>(lineRepository.getIdsModifiedSince(trafficIndexMarker.getTimestamp()));
+		final Map<String, StationTraffic> changedTraffic = new HashMap<>();
+		// Lines rewritten or deleted without the service left their old postings behind
+		if (!lineIds.isEmpty() || lineRepository.size() != trafficIndexMarker.getCount()) removeStaleTrafficPostings(lineIds, changedTraffic);
+		final ProgressStatus progress = new ProgressStatus("Indexing", lineRepository.getName(), lineIds.size());
+		for (String lineId : lineIds) {
+			lineRepository.getById(lineId).ifPresent(line -> addLineToTrafficIndex(line, changedTraffic));
+			progress.count();
+		}
+		stationTrafficRepository.addAll(changedTraffic.values());
+		LOGGER.info("Reindexed {} changed {} and {} {} since the last checkpoint", lineIds.size(), lineRepository.getName(), changedTraffic.size(), stationTrafficRepository.getName());
+	}
+	
+	private void removeStaleTrafficPostings(Set<String> changedLineIds, Map<String, StationTraffic> changedTraffic) {
+		final Map<String, Boolean> staleLines = new HashMap<>();
+		final Predicate<StationTrafficEntry> stale = entry -> staleLines.computeIfAbsent(entry.getLineId(), lineId -> changedLineIds.contains(lineId) || !lineRepository.containsById(lineId));
+		List<StationTraffic> page = stationTrafficRepository.getRange(0, Math.min(stationTrafficRepository.size(), REBUILD_BATCH_SIZE));
+		while (!page.isEmpty()) {
+			for (StationTraffic traffic : page) {
+				final List<StationTrafficEntry> arrivals = traffic.getArrivals().stream().filter(stale).toList();
+				final List<StationTrafficEntry> departures = traffic.getDepartures().stream().filter(stale).toList();
+				if (arrivals.isEmpty() && departures.isEmpty()) continue;
+				final StationTraffic changed = changedTraffic.computeIfAbsent(traffic.getId(), id -> stationTrafficRepository.getCopyById(id).orElse(traffic));
+				arrivals.forEach(entry -> changed.removeArrival(entry.getTime(), entry.getLineId()));
+				departures.forEach(entry -> changed.removeDeparture(entry.getTime(), entry.getLineId()));
+			}
+			page = stationTrafficRepository.getRangeAfter(page.get(page.size() - 1).getId(), REBUILD_BATCH_SIZE);
+		}
+	}
+	
+	private void rebuildTrafficIndex() {
+		final List<Line> lines = lineRepository.getAll();
+		final ProgressStatus progress = new ProgressStatus("Indexing", lineRepository.getName(), lines.size());
+		final ForkJoinPool pool = new ForkJoinPool(Math.max(1, SpringConfiguration.indexingThreads));
+		try {
+			// Every station day is built from its own partition of stops and written exactly once
+			final Map<String, List<TrafficPosting>> partitions = pool.submit(() -> lines.parallelStream()
+					.flatMap(line -> {
+						progress.count();
+						return createTrafficPostings(line).stream();
+					})
+					.collect(Collectors.groupingByConcurrent(posting -> StationTraffic.createIdFormNameAndDate(posting.stationId, posting.date)))
+				).get();
+			final List<List<TrafficPosting>> partitionList = new ArrayList<>(partitions.values());
+			pool.submit(() -> IntStream.range(0, (partitionList.size() + REBUILD_BATCH_SIZE - 1) / REBUILD_BATCH_SIZE).parallel()
+					.forEach(batch -> {
+						final List<StationTraffic> traffic = new ArrayList<>(REBUILD_BATCH_SIZE);
+						for (List<TrafficPosting> partition : partitionList.subList(batch * REBUILD_BATCH_SIZE, Math.min(partitionList.size(), (batch + 1) * REBUILD_BATCH_SIZE))) {
+							traffic.add(createStationTraffic(partition));
+						}
+						stationTrafficRepository.addAll(traffic);
+					})
+				).get();
+			final int removed = removeOrphanedStationTraffic(partitions.keySet());
+			boardCache.clear();
+			LOGGER.info("Rebuilt {} {} from {} {} and removed {} orphaned days", partitionList.size(), stationTrafficRepository.getName(), lines.size(), lineRepository.getName(), removed);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException exception) {
+			LOGGER.error("Couldn't rebuild traffic index: {} {}!", exception.getCause().getClass().getSimpleName(), exception.getCause().getMessage());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	private int removeOrphanedStationTraffic(Set<String> rebuiltIds) {
+		// Days no line stops at anymore, or entries filed under the wrong day by older versions, are not overwritten by a rebuild
+		final List<String> orphanedIds = new ArrayList<>();
+		List<StationTraffic> page = stationTrafficRepository.getRange(0, Math.min(stationTrafficRepository.size(), REBUILD_BATCH_SIZE));
+		while (!page.isEmpty()) {
+			for (StationTraffic traffic : page) {
+				if (!rebuiltIds.contains(traffic.getId())) orphanedIds.add(traffic.getId());
+			}
+			page = stationTrafficRepository.getRangeAfter(page.get(page.size() - 1).getId(), REBUILD_BATCH_SIZE);
+		}
+		if (!orphanedIds.isEmpty()) stationTrafficRepository.removeAll(orphanedIds);
+		return orphanedIds.size();
 	}
 	
-	private void addLineToTrafficIndex(Line line) {
+	private static StationTraffic createStationTraffic(List<TrafficPosting> partition) {
+		// Sorted entries are appended to the traffic tables without shifting
+		final List<TrafficPosting> postings = new ArrayList<>(partition);
+		postings.sort((first, second) -> first.entry.compareTo(second.entry));
+		final StationTraffic traffic = new StationTraffic(postings.get(0).stationId, postings.get(0).date);
+		for (TrafficPosting posting : postings) {
+			if (posting.arrival) traffic.addArrival(posting.entry);
+			else traffic.addDeparture(posting.entry);
+		}
+		return traffic;
+	}
+	
+	private static List<TrafficPosting> createTrafficPostings(Line line) {
+		final List<TrafficPosting> postings = new ArrayList<>(line.getStops().size() * 2);
 		int i = 0;
 		for (LineStop stop : line.getStops()) {
-			final StationTraffic arrivalStationTraffic = getOrCreateStationTraffic(stop.getStationId(), stop.getDeparture().toLocalDate());
-			arrivalStationTraffic.addArrival(new StationTrafficEntry(stop.getArrival().toLocalTime(), line.getId(), i, stop.getPlatform(), stop.getPlatfromArea(), line.getLastStop().equals(stop) ? true : false));
-			stationTrafficRepository.add(arrivalStationTraffic);
-			final StationTraffic departureStationTraffic = getOrCreateStationTraffic(stop.getStationId(), stop.getArrival().toLocalDate());
-			departureStationTraffic.addDeparture(new StationTrafficEntry(stop.getDeparture().toLocalTime(), line.getId(), i++, stop.getPlatform(), stop.getPlatfromArea(), line.getLastStop().equals(stop) ? true : false));
-			stationTrafficRepository.add(departureStationTraffic);
+			final boolean lastStation = line.getLastStop().equals(stop);
+			postings.add(new TrafficPosting(stop.getStationId(), stop.getArrival().toLocalDate(), true, new StationTrafficEntry(stop.getArrival().toLocalTime(), line.getId(), i, stop.getPlatform(), stop.getPlatfromArea(), lastStation)));
+			postings.add(new TrafficPosting(stop.getStationId(), stop.getDeparture().toLocalDate(), false, new StationTrafficEntry(stop.getDeparture().toLocalTime(), line.getId(), i++, stop.getPlatform(), stop.getPlatfromArea(), lastStation)));
 		}
+		return postings;
 	}
 	
-	private void removeLineToTrafficIndex(Line line) {
-		for (LineStop stop : line.getStops()) {
-			final StationTraffic arrivalStationTraffic = getOrCreateStationTraffic(stop.getStationId(), stop.getDeparture().toLocalDate());
-			arrivalStationTraffic.removeArrival(stop.getArrival().toLocalTime(), line.getId());
-			stationTrafficRepository.add(arrivalStationTraffic);
-			final StationTraffic departureStationTraffic = getOrCreateStationTraffic(stop.getStationId(), stop.getArrival().toLocalDate());
-			departureStationTraffic.removeDeparture(stop.getDeparture().toLocalTime(), line.getId());
-			stationTrafficRepository.add(departureStationTraffic);
+	private TrafficEntryDto createTrafficEntryDto(LocalDateTime dateTime, StationTrafficEntry entry) {
+		final TrafficEntryDto dto = new TrafficEntryDto();
+		dto.setDateTime(dateTime);
+		dto.setLineId(entry.getLineId());
+		dto.setStationPosition(entry.getStationPosition());
+		dto.setPlatform(entry.getPlatform());
+		dto.setLastStation(entry.isLastStation());
+		final RealtimeUpdate update = realtimeStore.get(entry.getLineId(), entry.getStationPosition());
+		if (update != null) {
+			dto.setDelay(update.getDelay());
+			dto.setChangedPlatform(update.getChangedPlatform());
+			dto.setChangedPlatfromArea(update.getChangedPlatfromArea());
+			dto.setCancelled(update.getCancelled());
+		}
+		return dto;
+	}
+	
+	private Line applyRealtime(Line line) {
+		final Map<Integer, RealtimeUpdate> updates = realtimeStore.getByLine(line.getId());
+		updates.forEach((position, update) -> {
+			if (position < line.getStops().size()) update.applyTo(line.getStops().get(position));
+		});
+		return line;
+	}
+	
+	private List<StationTrafficEntry> applyRealtime(List<StationTrafficEntry> entries) {
+		if (realtimeStore.isEmpty()) return entries;
+		final List<StationTrafficEntry> merged = new ArrayList<>(entries.size());
+		for (StationTrafficEntry entry : entries) {
+			final RealtimeUpdate update = realtimeStore.get(entry.getLineId(), entry.getStationPosition());
+			merged.add(update != null ? entry.withRealtime(update) : entry);
+		}
+		return merged;
+	}
+	
+	private boolean readTrafficIndexMarker() {
+		if (trafficIndexMarker == null || !trafficIndexMarker.exists() || stationTrafficRepository.isEmpty()) return false;
+		try {
+			trafficIndexMarker.read();
+			return true;
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't read traffic index marker, rebuilding index: {} {}", exception.getClass().getSimpleName(), exception.getMessage());
+			return false;
+		}
+	}
+	
+	private void writeTrafficIndexMarker(long timestamp) {
+		if (trafficIndexMarker == null) return;
+		try {
+			trafficIndexMarker.write(timestamp, lineRepository.size());
+		} catch (IOException exception) {
+			LOGGER.warn("Couldn't write traffic index marker: {} {}", exception.getClass().getSimpleName(), exception.getMessage());
 		}
 	}
 	
+	private StationBoard getStationBoard(String stationId, LocalDate date) {
+		return boardCache.get(StationTraffic.createIdFormNameAndDate(stationId, date), id -> stationTrafficRepository.getById(id)
+				.or(() -> stationTrafficRepository.getArchivedById(id))
+				.orElse(new StationTraffic(stationId, date)));
+	}
+	
+	private StationTraffic getOrCreateStationTraffic(Map<String, StationTraffic> changedTraffic, String stationId, LocalDate date) {
+		return changedTraffic.computeIfAbsent(StationTraffic.createIdFormNameAndDate(stationId, date), id -> getOrCreateStationTraffic(stationId, date));
+	}
+	
 	private StationTraffic getOrCreateStationTraffic(String stationId, LocalDate date) {
 		return stationTrafficRepository
-				.getById(StationTraffic.createIdFormNameAndDate(stationId, date))
+				.getCopyById(StationTraffic.createIdFormNameAndDate(stationId, date))
 				.orElse(new StationTraffic(stationId, date));
 	}
+	
+	private static class TrafficPosting {
+		
+		private final String stationId;
+		private final LocalDate date;
+		private final boolean arrival;
+		private final StationTrafficEntry entry;
+		
+		private TrafficPosting(String stationId, LocalDate date, boolean arrival, StationTrafficEntry entry) {
+			this.stationId = stationId;
+			this.date = date;
+			this.arrival = arrival;
+			this.entry = entry;
+		}
+		
+	}
+	
+	private static class DayCursor {
+		
+		private final LocalDate date;
+		private final List<StationTrafficEntry> entries;
+		private int index;
+		
+		private DayCursor(LocalDate date, List<StationTrafficEntry> entries) {
+			this.date = date;
+			this.entries = entries;
+		}
+		
+		private boolean hasEntry() {
+			return index < entries.size();
+		}
+		
+		private StationTrafficEntry getEntry() {
+			return entries.get(index);
+		}
+		
+		private LocalDateTime getDateTime() {
+			return date.atTime(getEntry().getTime());
+		}
+		
+		private void next() {
+			index++;
+		}
+		
+	}
 
 }
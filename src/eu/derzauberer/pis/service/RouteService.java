@@ -1,5 +1,7 @@
 package eu.derzauberer.pis.service;
 
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -13,10 +15,13 @@ public class RouteService extends EntityService<Route> {
 
 	private final SearchComponent<Route> searchComponent;
 	
+	private static final String OPERATOR_INDEX = "operator";
+	
 	@Autowired
 	public RouteService(EntityRepository<Route> repository) {
 		super(repository);
 		searchComponent = new SearchComponent<>(this);
+		registerIndex(OPERATOR_INDEX, String.class, route -> route.getOperatorId() != null ? List.of(route.getOperatorId()) : List.of());
 	}
 	
 	@Override
@@ -24,6 +29,10 @@ public class RouteService extends EntityService<Route> {
 		return searchComponent.search(search);
 	}
 	
+	public List<Route> getRoutesByOperatorId(String operatorId) {
+		return findByIndex(OPERATOR_INDEX, operatorId);
+	}
+	
 	public String createRouteId() {
 		return String.format("%08x", Long.valueOf(System.nanoTime()).toString().hashCode());
 	}
@@ -1,8 +1,8 @@
 package eu.derzauberer.pis.service;
 
 import java.time.LocalDateTime;
-import java.util.Set;
-import java.util.SortedSet;
+import java.util.List;
+import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -21,31 +21,58 @@ public class StationService extends EntityService<Station> {
 	private final EntityRepository<StationTraffic> stationTrafficRepository;
 	private final SearchComponent<Station> searchComponent;
 	
+	private static final String EVA_INDEX = "eva";
+	
 	@Autowired
 	public StationService(EntityRepository<Station> stationRepository, EntityRepository<StationTraffic> stationTrafficRepository) {
 		super(stationRepository);
 		this.stationTrafficRepository = stationTrafficRepository;
 		this.searchComponent = new SearchComponent<>(this, getStationSearchComperator());
+		registerIndex(EVA_INDEX, Long.class, StationService::getEvaNumbers);
 	}
 	
 	public Collectable<Station> search(String search) {
 		return searchComponent.search(search);
 	}
 	
-	public SortedSet<StationTrafficEntry> getDeparturesInHour(String stationId, LocalDateTime dateTime) {
+	public Optional<Station> getByEva(long eva) {
+		return findByIndex(EVA_INDEX, eva).stream().findFirst();
+	}
+	
+	public List<Station> getStationsWithEva() {
+		return findByIndexRange(EVA_INDEX, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+	
+	public List<StationTrafficEntry> getDeparturesInHour(String stationId, LocalDateTime dateTime) {
 		final StationTraffic stationTraffic = 
 				stationTrafficRepository.getById(StationTraffic.createIdFormNameAndDate(stationId, dateTime.toLocalDate()))
+				.or(() -> stationTrafficRepository.getArchivedById(StationTraffic.createIdFormNameAndDate(stationId, dateTime.toLocalDate())))
 				.orElse(new StationTraffic(stationId, dateTime.toLocalDate()));
 		return stationTraffic.getDeparturesInHour(dateTime.getHour());
 	}
 	
-	public Set<StationTrafficEntry> getArrivalsInHour(String stationId, LocalDateTime dateTime) {
+	public List<StationTrafficEntry> getArrivalsInHour(String stationId, LocalDateTime dateTime) {
 		final StationTraffic stationTraffic = 
 				stationTrafficRepository.getById(StationTraffic.createIdFormNameAndDate(stationId, dateTime.toLocalDate()))
+				.or(() -> stationTrafficRepository.getArchivedById(StationTraffic.createIdFormNameAndDate(stationId, dateTime.toLocalDate())))
 				.orElse(new StationTraffic(stationId, dateTime.toLocalDate()));
 		return stationTraffic.getArrivalsInHour(dateTime.getHour());
 	}
 	
+	private static List<Long> getEvaNumbers(Station station) {
+		if (station.getApiInformation() == null || station.getApiInformation().getIds() == null) return List.of();
+		final Object eva = station.getApiInformation().getIds().get("eva");
+		if (eva instanceof Number) return List.of(((Number) eva).longValue());
+		if (eva instanceof String) {
+			try {
+				return List.of(Long.parseLong((String) eva));
+			} catch (NumberFormatException exception) {
+				return List.of();
+			}
+		}
+		return List.of();
+	}
+	
 	private SearchComparator<Station> getStationSearchComperator() {
 		return (search, station1, station2) -> {
 			final boolean station1startsWithName = station1.getName().toLowerCase().startsWith(search.toLowerCase());
@@ -1,6 +1,7 @@
 package eu.derzauberer.pis.service;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,39 +34,30 @@ public class UserService extends EntityService<User> {
 	
 	@Override
 	public void add(User entity) {
-		if (entity.getEmail() != null) {
-			getById(entity.getEmail()).ifPresent(existing -> {
-				if (!existing.getId().equals(entity.getId())) {
-					throw new IllegalArgumentException("Identification email " + entity.getEmail() + " already exists as id!");
-				}
-			});
-			emailIdentification.get(entity.getEmail()).ifPresent(existing -> {
-				if (!existing.getId().equals(entity.getId())) {
-					throw new IllegalArgumentException("Identification email " + entity.getEmail() + " already exists as email!");
-				}
-			});
-		}
-		if (entity.getId() != null) {
-			emailIdentification.get(entity.getId()).ifPresent(existing -> {
-				if (!existing.getId().equals(entity.getId())) {
-					throw new IllegalArgumentException("Identification id " + entity.getId() + " already exists as email!");
-				}
-			});
-		}
-		
+		checkIdentification(entity);
 		super.add(entity);
 	}
 	
+	@Override
+	public void addAll(Collection<User> entities) {
+		entities.forEach(this::checkIdentification);
+		super.addAll(entities);
+	}
+	
 	public Optional<User> getByIdOrEmail(String id) {
 		return super.getById(id).or(() -> emailIdentification.get(id));
 	}
 	
+	public Optional<User> getCopyByIdOrEmail(String id) {
+		return getByIdOrEmail(id).flatMap(user -> getCopyById(user.getId()));
+	}
+	
 	public Collectable<User> search(String search) {
 		return this.search.search(search);
 	}
 	
 	public Optional<User> login(String username, String password) {
-		return userRepository.getById(username)
+		return userRepository.getCopyById(username)
 			.filter(processingUser -> passwordEncoder.matches(password, processingUser.getPassword()))
 			.map(processingUser -> {
 				processingUser.setLastLogin(LocalDateTime.now());
@@ -82,4 +74,26 @@ public class UserService extends EntityService<User> {
 		return passwordEncoder.matches(password, user.getPassword());
 	}
 	
+	private void checkIdentification(User entity) {
+		if (entity.getEmail() != null) {
+			getById(entity.getEmail()).ifPresent(existing -> {
+				if (!existing.getId().equals(entity.getId())) {
+					throw new IllegalArgumentException("Identification email " + entity.getEmail() + " already exists as id!");
+				}
+			});
+			emailIdentification.get(entity.getEmail()).ifPresent(existing -> {
+				if (!existing.getId().equals(entity.getId())) {
+					throw new IllegalArgumentException("Identification email " + entity.getEmail() + " already exists as email!");
+				}
+			});
+		}
+		if (entity.getId() != null) {
+			emailIdentification.get(entity.getId()).ifPresent(existing -> {
+				if (!existing.getId().equals(entity.getId())) {
+					throw new IllegalArgumentException("Identification id " + entity.getId() + " already exists as email!");
+				}
+			});
+		}
+	}
+
 }
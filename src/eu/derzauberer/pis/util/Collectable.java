@@ -1,10 +1,12 @@
 package eu.derzauberer.pis.util;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.function.Function;
 
 import eu.derzauberer.pis.dto.ListDto;
 import eu.derzauberer.pis.dto.PageDto;
+import eu.derzauberer.pis.model.Entity;
 
 public interface Collectable<T> {
 	
@@ -16,12 +18,26 @@ public interface Collectable<T> {
 	
 	List<T> getRange(int beginn, int end);
 	
+	default List<T> getRangeAfter(String id, int limit) {
+		final List<T> all = getAll();
+		for (int i = 0; i < all.size(); i++) {
+			if (id.equals(getKey(all.get(i)))) return all.subList(i + 1, i + 1 + Math.min(limit, all.size() - i - 1));
+		}
+		// Only id sorted collections like the services can continue after a removed entry
+		throw new IllegalArgumentException("The entry " + id + " is not part of the results!");
+	}
+	
+	default String getKey(T entry) {
+		if (entry instanceof Entity) return ((Entity<?>) entry).getId();
+		return null;
+	}
+	
 	default <R> Collectable<R> map(Function<T, R> mapping) {
 		return new CollectableMap<>(this, mapping);
 	}
 	
 	default ListDto<T> getList(int offset, int limit) {
-		if (offset < 1) throw new IllegalArgumentException("Offset has to be larger than zero!");
+		if (offset < 0) throw new IllegalArgumentException("Offset has to be at least zero!");
 		if (limit < 1) throw new IllegalArgumentException("Limit has to be larger than zero!");
 		if (offset != 0 && offset >= size()) {
 			throw new IllegalArgumentException("The offset is larger than the total amount of results!");
@@ -36,6 +52,19 @@ public interface Collectable<T> {
 		return listDto;
 	}
 	
+	default ListDto<T> getList(String after, int limit) {
+		Objects.requireNonNull(after);
+		if (limit < 1) throw new IllegalArgumentException("Limit has to be larger than zero!");
+		final List<T> results = getRangeAfter(after, limit);
+		final ListDto<T> listDto = new ListDto<>();
+		listDto.setAfter(after);
+		listDto.setLimit(results.size());
+		listDto.setTotal(size());
+		listDto.setResults(results);
+		if (results.size() == limit) listDto.setNext(getKey(results.get(results.size() - 1)));
+		return listDto;
+	}
+	
 	default PageDto<T> getPage(int page, int pageSize) {
 		if (page < 1) throw new IllegalArgumentException("Page has to be larger than zero!");
 		if (pageSize < 1) throw new IllegalArgumentException("PageSize has to be larger than zero!");
@@ -51,5 +80,17 @@ public interface Collectable<T> {
 		pageDto.setResults(getRange(offset, max));
 		return pageDto;
 	}
+	
+	default PageDto<T> getPage(String after, int pageSize) {
+		Objects.requireNonNull(after);
+		if (pageSize < 1) throw new IllegalArgumentException("PageSize has to be larger than zero!");
+		final List<T> results = getRangeAfter(after, pageSize);
+		final PageDto<T> pageDto = new PageDto<>();
+		pageDto.setPageSize(pageSize);
+		pageDto.setAfter(after);
+		pageDto.setResults(results);
+		if (results.size() == pageSize) pageDto.setNext(getKey(results.get(results.size() - 1)));
+		return pageDto;
+	}
 
 }
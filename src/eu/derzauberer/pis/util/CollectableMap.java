@@ -3,6 +3,9 @@ package eu.derzauberer.pis.util;
 import java.util.List;
 import java.util.function.Function;
 
+import eu.derzauberer.pis.dto.ListDto;
+import eu.derzauberer.pis.dto.PageDto;
+
 public class CollectableMap<T, R> implements Collectable<R>{
 	
 	private Collectable<T> collectable;
@@ -33,6 +36,34 @@ public class CollectableMap<T, R> implements Collectable<R>{
 		return collectable.getRange(beginn, end).stream().map(mapping).toList();
 	}
 	
+	@Override
+	public List<R> getRangeAfter(String id, int limit) {
+		return collectable.getRangeAfter(id, limit).stream().map(mapping).toList();
+	}
+	
+	@Override
+	public ListDto<R> getList(String after, int limit) {
+		final ListDto<T> list = collectable.getList(after, limit);
+		final ListDto<R> listDto = new ListDto<>();
+		listDto.setAfter(list.getAfter());
+		listDto.setNext(list.getNext());
+		listDto.setLimit(list.getLimit());
+		listDto.setTotal(list.getTotal());
+		listDto.setResults(list.getResults().stream().map(mapping).toList());
+		return listDto;
+	}
+	
+	@Override
+	public PageDto<R> getPage(String after, int pageSize) {
+		final PageDto<T> page = collectable.getPage(after, pageSize);
+		final PageDto<R> pageDto = new PageDto<>();
+		pageDto.setPageSize(page.getPageSize());
+		pageDto.setAfter(page.getAfter());
+		pageDto.setNext(page.getNext());
+		pageDto.setResults(page.getResults().stream().map(mapping).toList());
+		return pageDto;
+	}
+	
 	
 
 }
@@ -0,0 +1,190 @@
+package eu.derzauberer.pis.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class OrderStatisticTree<K extends Comparable<K>, V> {
+
+	// Nodes are never modified after creation, so readers work on a consistent snapshot
+	// of the root without locking and writers publish a new path with compare-and-set
+	private final AtomicReference<Node<K, V>> root = new AtomicReference<>();
+
+	public V get(K key) {
+		Objects.requireNonNull(key);
+		return get(root.get(), key);
+	}
+
+	public boolean containsKey(K key) {
+		return get(key) != null;
+	}
+
+	public V put(K key, V value) {
+		Objects.requireNonNull(key);
+		Objects.requireNonNull(value);
+		while (true) {
+			final Node<K, V> current = root.get();
+			final V previous = get(current, key);
+			if (root.compareAndSet(current, insert(current, key, value))) return previous;
+		}
+	}
+
+	public V remove(K key) {
+		Objects.requireNonNull(key);
+		while (true) {
+			final Node<K, V> current = root.get();
+			final V previous = get(current, key);
+			if (previous == null || root.compareAndSet(current, delete(current, key))) return previous;
+		}
+	}
+
+	public void clear() {
+		root.set(null);
+	}
+	
+	public int size() {
+		return size(root.get());
+	}
+
+	public boolean isEmpty() {
+		return root.get() == null;
+	}
+
+	public int rank(K key) {
+		Objects.requireNonNull(key);
+		return rank(root.get(), key);
+	}
+
+	public List<V> values() {
+		final Node<K, V> snapshot = root.get();
+		return getRange(snapshot, 0, size(snapshot));
+	}
+
+	public List<V> getRange(int beginn, int end) {
+		// The tree may shrink between a call to size() and this call, so the range is clamped
+		final Node<K, V> snapshot = root.get();
+		final int size = size(snapshot);
+		return getRange(snapshot, Math.min(beginn, size), Math.min(end, size));
+	}
+
+	public List<V> getRangeAfter(K key, int limit) {
+		Objects.requireNonNull(key);
+		final Node<K, V> snapshot = root.get();
+		final int beginn = rank(snapshot, key);
+		return getRange(snapshot, beginn, beginn + Math.min(limit, size(snapshot) - beginn));
+	}
+
+	private V get(Node<K, V> node, K key) {
+		while (node != null) {
+			final int comparison = key.compareTo(node.key);
+			if (comparison == 0) return node.value;
+			node = comparison < 0 ? node.left : node.right;
+		}
+		return null;
+	}
+
+	private int rank(Node<K, V> node, K key) {
+		int rank = 0;
+		while (node != null) {
+			if (key.compareTo(node.key) < 0) {
+				node = node.left;
+			} else {
+				rank += size(node.left) + 1;
+				node = node.right;
+			}
+		}
+		return rank;
+	}
+
+	private List<V> getRange(Node<K, V> snapshot, int beginn, int end) {
+		if (beginn < 0 || end > size(snapshot) || beginn > end) {
+			throw new IndexOutOfBoundsException("Range [" + beginn + ", " + end + ") is out of bounds for size " + size(snapshot));
+		}
+		final List<V> values = new ArrayList<>(end - beginn);
+		collect(snapshot, beginn, end, values);
+		return values;
+	}
+
+	private void collect(Node<K, V> node, int beginn, int end, List<V> values) {
+		if (node == null || beginn >= end) return;
+		final int leftSize = size(node.left);
+		if (beginn < leftSize) collect(node.left, beginn, Math.min(end, leftSize), values);
+		if (beginn <= leftSize && leftSize < end) values.add(node.value);
+		if (end > leftSize + 1) collect(node.right, Math.max(0, beginn - leftSize - 1), end - leftSize - 1, values);
+	}
+
+	private Node<K, V> insert(Node<K, V> node, K key, V value) {
+		if (node == null) return new Node<>(key, value, null, null);
+		final int comparison = key.compareTo(node.key);
+		if (comparison == 0) return new Node<>(key, value, node.left, node.right);
+		if (comparison < 0) return balance(new Node<>(node.key, node.value, insert(node.left, key, value), node.right));
+		return balance(new Node<>(node.key, node.value, node.left, insert(node.right, key, value)));
+	}
+
+	private Node<K, V> delete(Node<K, V> node, K key) {
+		if (node == null) return null;
+		final int comparison = key.compareTo(node.key);
+		if (comparison < 0) return balance(new Node<>(node.key, node.value, delete(node.left, key), node.right));
+		if (comparison > 0) return balance(new Node<>(node.key, node.value, node.left, delete(node.right, key)));
+		if (node.left == null) return node.right;
+		if (node.right == null) return node.left;
+		Node<K, V> successor = node.right;
+		while (successor.left != null) successor = successor.left;
+		return balance(new Node<>(successor.key, successor.value, node.left, delete(node.right, successor.key)));
+	}
+
+	private Node<K, V> balance(Node<K, V> node) {
+		final int difference = height(node.left) - height(node.right);
+		if (difference > 1) {
+			Node<K, V> left = node.left;
+			if (height(left.left) < height(left.right)) left = rotateLeft(left);
+			return rotateRight(new Node<>(node.key, node.value, left, node.right));
+		}
+		if (difference < -1) {
+			Node<K, V> right = node.right;
+			if (height(right.right) < height(right.left)) right = rotateRight(right);
+			return rotateLeft(new Node<>(node.key, node.value, node.left, right));
+		}
+		return node;
+	}
+
+	private Node<K, V> rotateLeft(Node<K, V> node) {
+		final Node<K, V> right = node.right;
+		return new Node<>(right.key, right.value, new Node<>(node.key, node.value, node.left, right.left), right.right);
+	}
+
+	private Node<K, V> rotateRight(Node<K, V> node) {
+		final Node<K, V> left = node.left;
+		return new Node<>(left.key, left.value, left.left, new Node<>(node.key, node.value, left.right, node.right));
+	}
+
+	private static int size(Node<?, ?> node) {
+		return node != null ? node.size : 0;
+	}
+
+	private static int height(Node<?, ?> node) {
+		return node != null ? node.height : 0;
+	}
+
+	private static class Node<K, V> {
+
+		private final K key;
+		private final V value;
+		private final Node<K, V> left;
+		private final Node<K, V> right;
+		private final int size;
+		private final int height;
+
+		private Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+			this.key = key;
+			this.value = value;
+			this.left = left;
+			this.right = right;
+			this.size = size(left) + size(right) + 1;
+			this.height = Math.max(height(left), height(right)) + 1;
+		}
+
+	}
+
+}
@@ -23,13 +23,13 @@ public class ProgressStatus {
 		this.counter = 0;
 	}
 	
-	public void count() {
+	public synchronized void count() {
 		if (total < 200 || counter++ <= section - 1) return;
 		counter = 0;
 		System.out.print(verb + " " + name + ": " + ++percent + "%\r");
 	}
 	
-	public void count(String entity) {
+	public synchronized void count(String entity) {
 		if (total < 200 || counter++ <= section - 1) {
 			System.out.print(verb + " " + name + ": " + percent + "% " + entity + "\r");
 			return;
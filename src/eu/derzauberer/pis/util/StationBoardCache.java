@@ -0,0 +1,197 @@
+package eu.derzauberer.pis.util;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import eu.derzauberer.pis.model.StationTraffic;
+import eu.derzauberer.pis.model.StationTrafficEntry;
+
+public class StationBoardCache {
+
+	private final int capacity;
+	private final LinkedHashMap<String, StationBoard> boards = new LinkedHashMap<>(64, 0.75F, true);
+	private long weight;
+	private long generation;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	public StationBoardCache(int capacity) {
+		this.capacity = capacity;
+	}
+
+	public StationBoard get(String id, Function<String, StationTraffic> loader) {
+		final long loadGeneration;
+		synchronized (this) {
+			final StationBoard board = boards.get(id);
+			if (board != null) {
+				hits++;
+				return board;
+			}
+			misses++;
+			loadGeneration = generation;
+		}
+		final StationBoard board = new StationBoard(loader.apply(id));
+		synchronized (this) {
+			// A board loaded while the station day was invalidated may already be outdated
+			if (loadGeneration == generation && capacity > 0 && board.size() <= capacity) {
+				final StationBoard previous = boards.put(id, board);
+				if (previous != null) weight -= previous.size();
+				weight += board.size();
+				while (weight > capacity) {
+					final StationBoard victim = boards.remove(boards.keySet().iterator().next());
+					weight -= victim.size();
+					evictions++;
+				}
+			}
+		}
+		return board;
+	}
+
+	public synchronized void invalidate(Collection<String> ids) {
+		generation++;
+		for (String id : ids) {
+			final StationBoard board = boards.remove(id);
+			if (board == null) continue;
+			weight -= board.size();
+			invalidations++;
+		}
+	}
+
+	public synchronized void clear() {
+		generation++;
+		boards.clear();
+		weight = 0;
+	}
+
+	public synchronized Map<String, Object> getStatistics() {
+		final Map<String, Object> statistics = new HashMap<>();
+		final long requests = hits + misses;
+		statistics.put("boardCacheSize", boards.size());
+		statistics.put("boardCacheEntries", weight);
+		statistics.put("boardCacheCapacity", capacity);
+		statistics.put("boardCacheHits", hits);
+		statistics.put("boardCacheMisses", misses);
+		statistics.put("boardCacheHitRate", requests == 0 ? 0.0 : (double) hits / requests);
+		statistics.put("boardCacheEvictions", evictions);
+		statistics.put("boardCacheInvalidations", invalidations);
+		return statistics;
+	}
+
+	public static class StationBoard {
+
+		private final StationTrafficEntry[] arrivals;
+		private final StationTrafficEntry[] departures;
+		private final int[] arrivalHours;
+		private final int[] departureHours;
+
+		private static final int HOURS = 24;
+
+		private StationBoard(StationTraffic traffic) {
+			arrivals = traffic.getArrivals().toArray(StationTrafficEntry[]::new);
+			departures = traffic.getDepartures().toArray(StationTrafficEntry[]::new);
+			arrivalHours = new int[HOURS + 1];
+			departureHours = new int[HOURS + 1];
+			for (int hour = 0; hour <= HOURS; hour++) {
+				arrivalHours[hour] = traffic.getAmountOfArrivalsBeforeHour(hour);
+				departureHours[hour] = traffic.getAmountOfDeparturesBeforeHour(hour);
+			}
+		}
+
+		public List<StationTrafficEntry> getArrivalsSinceHour(int hour, int offset, int limit) {
+			return getSinceHour(arrivals, arrivalHours, hour, offset, limit);
+		}
+
+		public List<StationTrafficEntry> getDeparturesSinceHour(int hour, int offset, int limit) {
+			return getSinceHour(departures, departureHours, hour, offset, limit);
+		}
+
+		public List<StationTrafficEntry> getArrivalsSince(LocalTime time) {
+			return getSince(arrivals, arrivalHours, time);
+		}
+
+		public List<StationTrafficEntry> getDeparturesSince(LocalTime time) {
+			return getSince(departures, departureHours, time);
+		}
+
+		public List<StationTrafficEntry> getArrivalsAfter(LocalTime time, String lineId, int position) {
+			return getAfter(arrivals, arrivalHours, time, lineId, position);
+		}
+
+		public List<StationTrafficEntry> getDeparturesAfter(LocalTime time, String lineId, int position) {
+			return getAfter(departures, departureHours, time, lineId, position);
+		}
+
+		public int getAmountOfArrivalsSinceHour(int hour) {
+			return arrivals.length - arrivalHours[hour];
+		}
+
+		public int getAmountOfDeparturesSinceHour(int hour) {
+			return departures.length - departureHours[hour];
+		}
+
+		public int getAmountOfArrivalsUntil(LocalTime time) {
+			return getAmountUntil(arrivals, arrivalHours, time);
+		}
+
+		public int getAmountOfDeparturesUntil(LocalTime time) {
+			return getAmountUntil(departures, departureHours, time);
+		}
+
+		public int size() {
+			return arrivals.length + departures.length;
+		}
+
+		private static List<StationTrafficEntry> getSinceHour(StationTrafficEntry[] entries, int[] hours, int hour, int offset, int limit) {
+			// The first entry of the page is found from the hour prefix counts without touching earlier entries
+			final int begin = (int) Math.min(entries.length, (long) hours[hour] + offset);
+			final int end = limit < 0 ? entries.length : (int) Math.min(entries.length, (long) begin + limit);
+			return Collections.unmodifiableList(Arrays.asList(entries).subList(begin, end));
+		}
+
+		private static List<StationTrafficEntry> getSince(StationTrafficEntry[] entries, int[] hours, LocalTime time) {
+			int low = hours[time.getHour()];
+			int high = hours[time.getHour() + 1];
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (entries[middle].getTime().isBefore(time)) low = middle + 1;
+				else high = middle;
+			}
+			return Collections.unmodifiableList(Arrays.asList(entries).subList(low, entries.length));
+		}
+
+		private static int getAmountUntil(StationTrafficEntry[] entries, int[] hours, LocalTime time) {
+			int low = hours[time.getHour()];
+			int high = hours[time.getHour() + 1];
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (!entries[middle].getTime().isAfter(time)) low = middle + 1;
+				else high = middle;
+			}
+			return low;
+		}
+
+		private static List<StationTrafficEntry> getAfter(StationTrafficEntry[] entries, int[] hours, LocalTime time, String lineId, int position) {
+			// Entries are ordered by time, line id and position, so the first later entry is an upper bound in the hour
+			final StationTrafficEntry key = new StationTrafficEntry(time, lineId, position, 0, null, false);
+			int low = hours[time.getHour()];
+			int high = hours[time.getHour() + 1];
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (entries[middle].compareTo(key) <= 0) low = middle + 1;
+				else high = middle;
+			}
+			return Collections.unmodifiableList(Arrays.asList(entries).subList(low, entries.length));
+		}
+
+	}
+
+}
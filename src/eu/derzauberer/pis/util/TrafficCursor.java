@@ -0,0 +1,52 @@
+package eu.derzauberer.pis.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Objects;
+
+// Position of the last traffic entry a client has seen
+public class TrafficCursor {
+	
+	private final LocalDateTime dateTime;
+	private final String lineId;
+	private final int stationPosition;
+	
+	private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmm");
+	
+	public TrafficCursor(LocalDateTime dateTime, String lineId, int stationPosition) {
+		this.dateTime = Objects.requireNonNull(dateTime);
+		this.lineId = Objects.requireNonNull(lineId);
+		this.stationPosition = stationPosition;
+	}
+	
+	public LocalDateTime getDateTime() {
+		return dateTime;
+	}
+	
+	public String getLineId() {
+		return lineId;
+	}
+	
+	public int getStationPosition() {
+		return stationPosition;
+	}
+	
+	public String encode() {
+		final String cursor = dateTime.format(FORMAT) + ":" + stationPosition + ":" + lineId;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	public static TrafficCursor decode(String cursor) {
+		try {
+			final String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 3);
+			if (parts.length != 3 || parts[2].isEmpty()) throw new IllegalArgumentException("Cursor " + cursor + " is invalid!");
+			return new TrafficCursor(LocalDateTime.parse(parts[0], FORMAT), parts[2], Integer.parseInt(parts[1]));
+		} catch (DateTimeParseException | NumberFormatException exception) {
+			throw new IllegalArgumentException("Cursor " + cursor + " is invalid!");
+		}
+	}
+	
+}